@@ -11,6 +11,8 @@ type Category = {
   imageUrl?: string;
   parentCategoryId?: number;
   parentCategoryName?: string;
+  productCount?: number;
+  subtreeProductCount?: number;
 };
 
 export default function AdminCategoriesPage() {
@@ -169,6 +171,7 @@ export default function AdminCategoriesPage() {
                 <th className="py-2">ID</th>
                 <th>Название</th>
                 <th>Родительская категория</th>
+                <th>Товаров</th>
                 <th>Описание</th>
                 <th></th>
               </tr>
@@ -187,6 +190,10 @@ export default function AdminCategoriesPage() {
                   <td className="text-gray-600">
                     {c.parentCategoryName || "—"}
                   </td>
+                  <td className="text-gray-600">
+                    {c.subtreeProductCount ?? 0}
+                    {c.subtreeProductCount !== c.productCount && ` (${c.productCount ?? 0} напрямую)`}
+                  </td>
                   <td>{c.description}</td>
                   <td className="text-right space-x-2">
                     <button
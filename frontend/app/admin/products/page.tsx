@@ -13,6 +13,7 @@ type Product = {
   price: number;
   categoryId: number;
   imageUrl?: string;
+  version?: number;
 };
 
 export default function AdminProductsPage() {
@@ -29,6 +30,8 @@ export default function AdminProductsPage() {
   });
   const [image, setImage] = useState<File | null>(null);
   const [editingId, setEditingId] = useState<number | null>(null);
+  // Состояние товара на момент начала редактирования: в PATCH уходят только отличия от него
+  const [original, setOriginal] = useState<Product | null>(null);
 
   async function fetchData() {
     setLoading(true);
@@ -55,6 +58,7 @@ export default function AdminProductsPage() {
     setForm({ name: "", description: "", price: 0, categoryId: 0 });
     setImage(null);
     setEditingId(null);
+    setOriginal(null);
   }
 
   async function handleCreate(e: React.FormEvent) {
@@ -78,16 +82,15 @@ export default function AdminProductsPage() {
 
   async function handleSave(e: React.FormEvent) {
     e.preventDefault();
-    if (!editingId) return;
+    if (!editingId || !original) return;
     setError(null);
+    const changes: Partial<Product> = { version: original.version };
+    if (form.name !== original.name) changes.name = form.name;
+    if ((form.description || "") !== (original.description || "")) changes.description = form.description;
+    if (Number(form.price) !== Number(original.price)) changes.price = form.price;
+    if (Number(form.categoryId) !== Number(original.categoryId)) changes.categoryId = form.categoryId;
     try {
-      await apiFetchJSON(`/products/${editingId}`, "PUT", {
-        name: form.name,
-        description: form.description,
-        price: form.price,
-        categoryId: form.categoryId,
-        imageUrl: form.imageUrl || "",
-      });
+      await apiFetchJSON(`/products/${editingId}`, "PATCH", changes);
       resetForm();
       await fetchData();
     } catch (e: any) {
@@ -106,17 +109,25 @@ export default function AdminProductsPage() {
     }
   }
 
-  function startEdit(p: Product) {
-    setEditingId(p.id!);
-    setForm({
-      id: p.id,
-      name: p.name,
-      description: p.description || "",
-      price: Number(p.price),
-      categoryId: Number(p.categoryId),
-      imageUrl: p.imageUrl,
-    });
-    setImage(null);
+  async function startEdit(p: Product) {
+    setError(null);
+    try {
+      // Карточка содержит текущую версию товара
+      const current = await apiFetch<Product>(`/products/${p.id}`, { cache: "no-store" });
+      setEditingId(current.id!);
+      setOriginal(current);
+      setForm({
+        id: current.id,
+        name: current.name,
+        description: current.description || "",
+        price: Number(current.price),
+        categoryId: Number(current.categoryId),
+        imageUrl: current.imageUrl,
+      });
+      setImage(null);
+    } catch (e: any) {
+      setError(e.message || "Не удалось загрузить товар");
+    }
   }
 
   const isEditing = Boolean(editingId);
@@ -33,10 +33,51 @@ type FilterState = {
   search: string;
 };
 
+type Facets = {
+  total: number;
+  categories: { categoryId: number; count: number }[];
+  prices: { from: number | null; to: number | null; count: number }[];
+};
+
+type ProductPage = {
+  items: Product[];
+  next: string | null;
+  facets?: Facets;
+};
+
+const PAGE_SIZE = 24;
+const SEARCH_DELAY_MS = 300;
+
+const PRICE_RANGES: Record<string, { minPrice?: number; maxPrice?: number }> = {
+  "0-10000": { maxPrice: 10000 },
+  "10000-50000": { minPrice: 10000, maxPrice: 50000 },
+  "50000-100000": { minPrice: 50000, maxPrice: 100000 },
+  "100000+": { minPrice: 100000 },
+};
+
+// Поиск, фильтрация, сортировка и счетчики выполняются на сервере, загружается одна страница
+function buildQuery(filters: FilterState, cursor?: string | null): string {
+  const params = new URLSearchParams({ size: String(PAGE_SIZE), sort: filters.sortBy });
+  if (filters.search) params.set("q", filters.search);
+  if (filters.category !== "all") params.set("categoryIds", filters.category);
+  const range = PRICE_RANGES[filters.priceRange];
+  if (range?.minPrice !== undefined) params.set("minPrice", String(range.minPrice));
+  if (range?.maxPrice !== undefined) params.set("maxPrice", String(range.maxPrice));
+  if (cursor) {
+    params.set("cursor", cursor);
+  } else {
+    params.set("facets", "true");
+  }
+  return params.toString();
+}
+
 export default function CatalogPage() {
   const [products, setProducts] = useState<Product[]>([]);
   const [categories, setCategories] = useState<Category[]>([]);
+  const [facets, setFacets] = useState<Facets | null>(null);
+  const [nextCursor, setNextCursor] = useState<string | null>(null);
   const [loading, setLoading] = useState(true);
+  const [loadingMore, setLoadingMore] = useState(false);
   const [error, setError] = useState<string | null>(null);
   const [filters, setFilters] = useState<FilterState>({
     category: "all",
@@ -44,77 +85,67 @@ export default function CatalogPage() {
     sortBy: "name",
     search: ""
   });
+  // Запрос поиска уходит на сервер после паузы в наборе
+  const [search, setSearch] = useState("");
+  const query: FilterState = { ...filters, search };
 
   useEffect(() => {
-    // Загрузка товаров
-    fetch("/api/products")
+    const timer = setTimeout(() => setSearch(filters.search.trim()), SEARCH_DELAY_MS);
+    return () => clearTimeout(timer);
+  }, [filters.search]);
+
+  useEffect(() => {
+    // Загрузка категорий
+    fetch("/api/categories")
+      .then((res) => res.json())
+      .then((data) => setCategories(data))
+      .catch((err) => console.error("Ошибка загрузки категорий:", err));
+  }, []);
+
+  useEffect(() => {
+    // Первая страница товаров вместе со счетчиками фильтров; ответ на устаревший запрос игнорируется
+    let stale = false;
+    fetch(`/api/products?${buildQuery(query)}`)
       .then((res) => {
         if (!res.ok) throw new Error(`Ошибка ${res.status}`);
         return res.json();
       })
-      .then((data) => {
-        setProducts(data);
+      .then((data: ProductPage) => {
+        if (stale) return;
+        setProducts(data.items);
+        setNextCursor(data.next);
+        setFacets(data.facets ?? null);
         setLoading(false);
       })
       .catch((err) => {
+        if (stale) return;
         console.error("Ошибка загрузки:", err);
         setError("Не удалось загрузить товары");
         setLoading(false);
       });
+    return () => {
+      stale = true;
+    };
+  }, [search, filters.category, filters.priceRange, filters.sortBy]);
+
+  const loadMore = () => {
+    if (!nextCursor) return;
+    setLoadingMore(true);
+    fetch(`/api/products?${buildQuery(query, nextCursor)}`)
+      .then((res) => {
+        if (!res.ok) throw new Error(`Ошибка ${res.status}`);
+        return res.json();
+      })
+      .then((data: ProductPage) => {
+        setProducts((prev) => [...prev, ...data.items]);
+        setNextCursor(data.next);
+      })
+      .catch((err) => console.error("Ошибка загрузки:", err))
+      .finally(() => setLoadingMore(false));
+  };
 
-    // Загрузка категорий
-    fetch("/api/categories")
-      .then((res) => res.json())
-      .then((data) => setCategories(data))
-      .catch((err) => console.error("Ошибка загрузки категорий:", err));
-  }, []);
-
-  // Фильтрация и сортировка товаров
-  const filteredProducts = products
-    .filter(product => {
-      // Фильтр по категории
-      if (filters.category !== "all" && product.categoryId !== parseInt(filters.category)) {
-        return false;
-      }
-
-      // Фильтр по цене
-      if (filters.priceRange !== "all") {
-        const price = product.price;
-        switch (filters.priceRange) {
-          case "0-10000":
-            if (price > 10000) return false;
-            break;
-          case "10000-50000":
-            if (price < 10000 || price > 50000) return false;
-            break;
-          case "50000-100000":
-            if (price < 50000 || price > 100000) return false;
-            break;
-          case "100000+":
-            if (price < 100000) return false;
-            break;
-        }
-      }
-
-      // Поиск
-      if (filters.search && !product.name.toLowerCase().includes(filters.search.toLowerCase())) {
-        return false;
-      }
-
-      return true;
-    })
-    .sort((a, b) => {
-      // Сортировка
-      switch (filters.sortBy) {
-        case "price-asc":
-          return a.price - b.price;
-        case "price-desc":
-          return b.price - a.price;
-        case "name":
-        default:
-          return a.name.localeCompare(b.name);
-      }
-    });
+  const categoryCount = (categoryId: number) =>
+    facets?.categories.find((c) => c.categoryId === categoryId)?.count;
 
   const handleFilterChange = (key: keyof FilterState, value: string) => {
     setFilters(prev => ({ ...prev, [key]: value }));
@@ -206,6 +237,7 @@ export default function CatalogPage() {
                           style={{ color: 'black' }} // <- Добавлено
                         >
                           {category.name}
+                          {categoryCount(category.id) !== undefined ? ` (${categoryCount(category.id)})` : ""}
                         </option>
                       ))}
                     </select>
@@ -267,7 +299,7 @@ export default function CatalogPage() {
             {/* Информация о результатах */}
             <div className="flex justify-between items-center mb-6">
               <p className="text-gray-600">
-                Найдено товаров: <span className="font-semibold">{filteredProducts.length}</span>
+                Найдено товаров: <span className="font-semibold">{facets ? facets.total : products.length}</span>
               </p>
               <div className="flex items-center gap-4">
                 <span className="text-sm text-gray-600">Вид:</span>
@@ -285,7 +317,7 @@ export default function CatalogPage() {
             </div>
 
             {/* Сетка товаров */}
-            {filteredProducts.length === 0 ? (
+            {products.length === 0 ? (
               <div className="bg-white rounded-2xl shadow-md p-12 text-center">
                 <svg className="w-16 h-16 text-gray-400 mx-auto mb-4" fill="none" stroke="currentColor" viewBox="0 0 24 24">
                   <path strokeLinecap="round" strokeLinejoin="round" strokeWidth={2} d="M9.172 16.172a4 4 0 015.656 0M9 10h.01M15 10h.01M21 12a9 9 0 11-18 0 9 9 0 0118 0z" />
@@ -305,7 +337,7 @@ export default function CatalogPage() {
               </div>
             ) : (
               <div className="grid grid-cols-1 md:grid-cols-2 xl:grid-cols-3 gap-6">
-                {filteredProducts.map((product) => (
+                {products.map((product) => (
                   <div key={product.id} className="bg-white rounded-2xl shadow-md overflow-hidden hover:shadow-lg transition-shadow">
                     <Link href={`/products/${product.id}`}>
                       <div className="h-48 bg-gray-100 overflow-hidden">
@@ -353,26 +385,12 @@ export default function CatalogPage() {
               </div>
             )}
 
-            {/* Пагинация (если нужно) */}
-            {filteredProducts.length > 0 && (
+            {/* Следующая страница */}
+            {nextCursor && (
               <div className="flex justify-center mt-12">
-                <nav className="flex items-center gap-2">
-                  <button className="px-3 py-2 bg-gray-200 rounded-lg hover:bg-gray-300">
-                    <svg className="w-4 h-4" fill="none" stroke="currentColor" viewBox="0 0 24 24">
-                      <path strokeLinecap="round" strokeLinejoin="round" strokeWidth={2} d="M15 19l-7-7 7-7" />
-                    </svg>
-                  </button>
-
-                  <button className="px-3 py-2 bg-yellow-500 text-gray-700 rounded-lg font-semibold">1</button>
-                  <button className="px-3 py-2 bg-gray-200 rounded-lg hover:bg-gray-300">2</button>
-                  <button className="px-3 py-2 bg-gray-200 rounded-lg hover:bg-gray-300">3</button>
-
-                  <button className="px-3 py-2 bg-gray-200 rounded-lg hover:bg-gray-300">
-                    <svg className="w-4 h-4" fill="none" stroke="currentColor" viewBox="0 0 24 24">
-                      <path strokeLinecap="round" strokeLinejoin="round" strokeWidth={2} d="M9 5l7 7-7 7" />
-                    </svg>
-                  </button>
-                </nav>
+                <Button onClick={loadMore} disabled={loadingMore}>
+                  {loadingMore ? "Загрузка..." : "Показать ещё"}
+                </Button>
               </div>
             )}
           </div>
@@ -58,38 +58,17 @@ export default function CategoryPage({ params }: { params: Promise<{ id: string
     fetchData();
   }, [resolvedParams.id]);
 
-  // Функция для получения всех товаров из категории и её дочерних категорий
+  // Товары категории и всех её дочерних категорий одним запросом
   async function fetchProductsWithSubcategories(categoryId: string): Promise<Product[]> {
-    const allProducts: Product[] = [];
-    
-    // Получаем товары из текущей категории
     try {
-      const productsRes = await fetch(`/api/products/by-category/${categoryId}`);
+      const productsRes = await fetch(`/api/products/by-category/${categoryId}?includeDescendants=true`);
       if (productsRes.ok) {
-        const productsData = await productsRes.json();
-        allProducts.push(...productsData);
+        return await productsRes.json();
       }
     } catch (error) {
       console.error("Ошибка загрузки товаров категории:", error);
     }
-
-    // Получаем дочерние категории
-    try {
-      const subcategoriesRes = await fetch(`/api/categories/${categoryId}/subcategories`);
-      if (subcategoriesRes.ok) {
-        const subcategories = await subcategoriesRes.json();
-        
-        // Рекурсивно получаем товары из каждой дочерней категории
-        for (const subcategory of subcategories) {
-          const subcategoryProducts = await fetchProductsWithSubcategories(subcategory.id.toString());
-          allProducts.push(...subcategoryProducts);
-        }
-      }
-    } catch (error) {
-      console.error("Ошибка загрузки дочерних категорий:", error);
-    }
-
-    return allProducts;
+    return [];
   }
 
   if (loading) {
@@ -15,6 +15,7 @@ type Product = {
   price: number;
   imageUrl?: string;
   categoryId: number;
+  categoryPath?: { id: number; name: string }[];
 };
 
 export default function ProductPage() {
@@ -111,6 +112,18 @@ export default function ProductPage() {
 
           <div className="flex-1 flex flex-col justify-between p-4 md:p-6">
             <div className="flex flex-col gap-4">
+              {product.categoryPath && product.categoryPath.length > 0 && (
+                <nav className="text-sm text-gray-500 flex flex-wrap gap-1">
+                  {product.categoryPath.map((c, i) => (
+                    <span key={c.id}>
+                      {i > 0 && <span className="mx-1">/</span>}
+                      <Link href={`/categories/${c.id}`} className="hover:text-yellow-600">
+                        {c.name}
+                      </Link>
+                    </span>
+                  ))}
+                </nav>
+              )}
               <h1 className="text-3xl font-bold text-gray-900">{product.name}</h1>
               <p className="text-2xl font-semibold text-gray-900">
                 {product.price.toLocaleString()} ₽
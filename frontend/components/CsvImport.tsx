@@ -1,7 +1,18 @@
 "use client";
 
-import { useState } from "react";
-import { apiPreviewCsv, apiImportCsv } from "@/lib/api";
+import { useCallback, useEffect, useRef, useState } from "react";
+import {
+  apiPreviewCsv,
+  apiImportCsv,
+  apiImportJob,
+  apiCancelImport,
+  apiWatchImport,
+  isImportFinished,
+  ImportJob,
+} from "@/lib/api";
+
+// id текущей задачи импорта, чтобы после перезагрузки страницы снова следить за ней
+const JOB_STORAGE_KEY = "dw_import_job";
 
 interface CsvImportProps {
   onImportComplete?: (count: number) => void;
@@ -12,6 +23,7 @@ interface PreviewData {
   targetFields: string[];
   previewData: any[];
   totalRows: number;
+  totalRowsEstimated: boolean;
 }
 
 interface ColumnMapping {
@@ -29,6 +41,78 @@ export function CsvImport({ onImportComplete }: CsvImportProps) {
   const [showPreview, setShowPreview] = useState(false);
   const [showMapping, setShowMapping] = useState(false);
   const [columnMappings, setColumnMappings] = useState<ColumnMapping[]>([]);
+  const [job, setJob] = useState<ImportJob | null>(null);
+  const watchRef = useRef<AbortController | null>(null);
+  // Родитель может передавать новую функцию на каждом рендере, подписка от этого не пересоздается
+  const onImportCompleteRef = useRef(onImportComplete);
+  onImportCompleteRef.current = onImportComplete;
+
+  const handleFinished = useCallback((finished: ImportJob) => {
+    localStorage.removeItem(JOB_STORAGE_KEY);
+    if (finished.status === "FAILED") {
+      setError(`Импорт завершился ошибкой: ${finished.message || ""}`);
+      return;
+    }
+    const prefix = finished.status === "CANCELLED" ? "Импорт отменен. Импортировано" : "Импортировано";
+    setMessage(
+      finished.failed > 0
+        ? `${prefix} ${finished.imported} товаров, ошибок: ${finished.failed}. ${finished.errors.slice(0, 5).join("; ")}`
+        : `${prefix} ${finished.imported} товаров`
+    );
+    onImportCompleteRef.current?.(finished.imported);
+  }, []);
+
+  const watch = useCallback((id: string) => {
+    watchRef.current?.abort();
+    const controller = new AbortController();
+    watchRef.current = controller;
+    let last: ImportJob | null = null;
+    const update = (next: ImportJob) => {
+      last = next;
+      setJob(next);
+    };
+    const poll = async () => {
+      // Запасной путь, если поток SSE оборвался: опрос раз в 2 секунды
+      while (!controller.signal.aborted && !(last && isImportFinished(last))) {
+        await new Promise((resolve) => setTimeout(resolve, 2000));
+        if (controller.signal.aborted) return;
+        try {
+          update(await apiImportJob(id));
+        } catch {
+          localStorage.removeItem(JOB_STORAGE_KEY);
+          setJob(null);
+          return;
+        }
+      }
+    };
+    apiWatchImport(id, update, controller.signal)
+      .catch(() => undefined)
+      .then(() => (last && isImportFinished(last) ? undefined : poll()))
+      .then(() => {
+        if (!controller.signal.aborted && last && isImportFinished(last)) {
+          handleFinished(last);
+        }
+      });
+  }, [handleFinished]);
+
+  useEffect(() => {
+    const id = localStorage.getItem(JOB_STORAGE_KEY);
+    if (id) {
+      apiImportJob(id)
+        .then((current) => {
+          setJob(current);
+          if (isImportFinished(current)) {
+            localStorage.removeItem(JOB_STORAGE_KEY);
+          } else {
+            watch(id);
+          }
+        })
+        .catch(() => localStorage.removeItem(JOB_STORAGE_KEY));
+    }
+    return () => watchRef.current?.abort();
+  }, [watch]);
+
+  const running = job !== null && !isImportFinished(job);
 
   const handleFileChange = (e: React.ChangeEvent<HTMLInputElement>) => {
     const selectedFile = e.target.files?.[0];
@@ -87,12 +171,11 @@ export function CsvImport({ onImportComplete }: CsvImportProps) {
     setMessage("");
 
     try {
-      const result = await apiImportCsv(file);
-      setMessage(`Успешно импортировано ${result.importedCount} товаров`);
+      const started = await apiImportCsv(file);
+      localStorage.setItem(JOB_STORAGE_KEY, started.id);
+      setJob(started);
       setFile(null);
-      if (onImportComplete) {
-        onImportComplete(result.importedCount);
-      }
+      watch(started.id);
     } catch (err) {
       setError(err instanceof Error ? err.message : "Ошибка при импорте");
     } finally {
@@ -100,6 +183,15 @@ export function CsvImport({ onImportComplete }: CsvImportProps) {
     }
   };
 
+  const handleCancel = async () => {
+    if (!job) return;
+    try {
+      setJob(await apiCancelImport(job.id));
+    } catch (err) {
+      setError(err instanceof Error ? err.message : "Ошибка при отмене импорта");
+    }
+  };
+
   const getFieldDisplayName = (fieldName: string) => {
     const fieldNames: { [key: string]: string } = {
       name: "Название",
@@ -169,11 +261,20 @@ export function CsvImport({ onImportComplete }: CsvImportProps) {
           
           <button
             onClick={handleImport}
-            disabled={!file || loading || !previewData}
+            disabled={!file || loading || running || !previewData}
             className="px-4 py-2 bg-blue-600 text-white rounded-md hover:bg-blue-700 disabled:bg-gray-400 disabled:cursor-not-allowed"
           >
-            {loading ? "Импорт..." : "Импортировать"}
+            {loading || running ? "Импорт..." : "Импортировать"}
           </button>
+
+          {running && (
+            <button
+              onClick={handleCancel}
+              className="px-4 py-2 bg-red-600 text-white rounded-md hover:bg-red-700"
+            >
+              Отменить
+            </button>
+          )}
           
           <button
             onClick={downloadTemplate}
@@ -183,6 +284,14 @@ export function CsvImport({ onImportComplete }: CsvImportProps) {
           </button>
         </div>
 
+        {running && job && (
+          <div className="p-3 bg-blue-50 border border-blue-300 text-blue-800 rounded text-sm">
+            {job.status === "QUEUED"
+              ? `Импорт ${job.fileName} ожидает в очереди`
+              : `Импорт ${job.fileName}: обработано ${job.processed} строк, импортировано ${job.imported}, ошибок ${job.failed} (${job.rowsPerSecond} строк/с)`}
+          </div>
+        )}
+
         {message && (
           <div className="p-3 bg-green-100 border border-green-400 text-green-700 rounded">
             {message}
@@ -231,7 +340,7 @@ export function CsvImport({ onImportComplete }: CsvImportProps) {
 
         {showPreview && previewData && (
           <div className="mt-6">
-            <h4 className="text-lg font-semibold mb-3 text-black">Предварительный просмотр ({previewData.totalRows} строк)</h4>
+            <h4 className="text-lg font-semibold mb-3 text-black">Предварительный просмотр ({previewData.totalRowsEstimated ? "≈" : ""}{previewData.totalRows} строк)</h4>
             <div className="overflow-x-auto">
               <table className="min-w-full text-sm border-collapse border border-gray-300">
                 <thead>
@@ -257,7 +366,7 @@ export function CsvImport({ onImportComplete }: CsvImportProps) {
               </table>
               {previewData.totalRows > 10 && (
                 <p className="text-sm text-gray-500 mt-2">
-                  Показаны первые 10 строк из {previewData.totalRows}
+                  Показаны первые 10 строк из {previewData.totalRowsEstimated ? "примерно " : ""}{previewData.totalRows}
                 </p>
               )}
             </div>
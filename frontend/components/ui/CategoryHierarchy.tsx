@@ -10,8 +10,17 @@ type Category = {
   imageUrl?: string;
   parentCategoryId?: number;
   parentCategoryName?: string;
+  subtreeProductCount?: number;
 };
 
+function productsLabel(count: number) {
+  const mod10 = count % 10;
+  const mod100 = count % 100;
+  if (mod10 === 1 && mod100 !== 11) return `${count} товар`;
+  if (mod10 >= 2 && mod10 <= 4 && (mod100 < 12 || mod100 > 14)) return `${count} товара`;
+  return `${count} товаров`;
+}
+
 interface CategoryHierarchyProps {
   category: Category;
 }
@@ -61,6 +70,12 @@ export default function CategoryHierarchy({ category }: CategoryHierarchyProps)
           </h3>
         </Link>
         
+        {category.subtreeProductCount !== undefined && (
+          <p className="text-gray-500 text-xs mb-2">
+            {productsLabel(category.subtreeProductCount)}
+          </p>
+        )}
+
         {category.description && (
           <p className="text-gray-600 text-sm line-clamp-2 mb-3">
             {category.description}
@@ -1,4 +1,4 @@
-export type HttpMethod = "GET" | "POST" | "PUT" | "DELETE";
+export type HttpMethod = "GET" | "POST" | "PUT" | "PATCH" | "DELETE";
 
 function getToken(): string | null {
   if (typeof window === "undefined") return null;
@@ -99,18 +99,90 @@ export async function apiFetchForm<T = unknown>(
   return (await res.json()) as T;
 }
 
-export async function apiPreviewCsv(file: File): Promise<{ csvHeaders: string[]; targetFields: string[]; previewData: any[]; totalRows: number }> {
+export async function apiPreviewCsv(file: File): Promise<{
+  csvHeaders: string[];
+  targetFields: string[];
+  previewData: any[];
+  totalRows: number;
+  totalRowsEstimated: boolean;
+}> {
   const formData = new FormData();
   formData.append("file", file);
   return apiFetchForm("/products/preview-csv", formData);
 }
 
-export async function apiImportCsv(file: File): Promise<{ message: string; importedCount: number; products: any[] }> {
+export type ImportJobStatus = "QUEUED" | "RUNNING" | "COMPLETED" | "FAILED" | "CANCELLED";
+
+export type ImportJob = {
+  id: string;
+  fileName: string;
+  status: ImportJobStatus;
+  processed: number;
+  imported: number;
+  failed: number;
+  rowsPerSecond: number;
+  createdAt: string;
+  startedAt?: string;
+  finishedAt?: string;
+  message?: string;
+  errors: string[];
+};
+
+export function isImportFinished(job: ImportJob) {
+  return job.status === "COMPLETED" || job.status === "FAILED" || job.status === "CANCELLED";
+}
+
+/** Запускает фоновый импорт, ответ приходит сразу с id задачи */
+export async function apiImportCsv(file: File): Promise<ImportJob> {
   const formData = new FormData();
   formData.append("file", file);
   return apiFetchForm("/products/import-csv", formData);
 }
 
+export async function apiImportJob(id: string): Promise<ImportJob> {
+  return apiFetch(`/products/import-jobs/${id}`);
+}
+
+export async function apiCancelImport(id: string): Promise<ImportJob> {
+  return apiFetch(`/products/import-jobs/${id}`, { method: "DELETE" });
+}
+
+/**
+ * Подписка на поток SSE задачи импорта. EventSource не умеет передавать заголовок
+ * Authorization, поэтому поток читается через fetch. Завершается вместе с задачей.
+ */
+export async function apiWatchImport(
+  id: string,
+  onUpdate: (job: ImportJob) => void,
+  signal: AbortSignal
+): Promise<void> {
+  const token = getToken();
+  const headers = new Headers({ Accept: "text/event-stream" });
+  if (token) headers.set("Authorization", `Bearer ${token}`);
+  const res = await fetch(`/api/products/import-jobs/${id}/events`, { headers, signal });
+  if (!res.ok || !res.body) {
+    throw new Error(`HTTP ${res.status}`);
+  }
+  const reader = res.body.pipeThrough(new TextDecoderStream()).getReader();
+  let buffer = "";
+  for (;;) {
+    const { value, done } = await reader.read();
+    if (done) return;
+    buffer += value;
+    let end: number;
+    while ((end = buffer.indexOf("\n\n")) >= 0) {
+      const event = buffer.slice(0, end);
+      buffer = buffer.slice(end + 2);
+      const data = event
+        .split("\n")
+        .filter((line) => line.startsWith("data:"))
+        .map((line) => line.slice(5))
+        .join("\n");
+      if (data) onUpdate(JSON.parse(data) as ImportJob);
+    }
+  }
+}
+
 export function saveToken(token: string) {
   if (typeof window === "undefined") return;
   localStorage.setItem("dw_admin_token", token);
@@ -0,0 +1,43 @@
+package ru.dugaweld.www.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * GET-запросы каталога читают основную базу, а не реплику. Их ответы помечены ETag
+ * версии каталога, которая растет сразу после коммита на основной базе; отстающая реплика
+ * отдала бы под новым ETag старое тело, и браузер получал бы на него 304 до следующей записи.
+ * Выгрузка каталога ETag не использует и читает реплику.
+ */
+@Component
+public class CatalogReadFilter extends OncePerRequestFilter {
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        boolean catalog = path.equals("/products") || path.startsWith("/products/")
+            || path.equals("/categories") || path.startsWith("/categories/");
+        return !catalog || path.equals("/products/export");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Boolean previous = ReadWriteRoutingDataSource.forcePrimary();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReadWriteRoutingDataSource.restore(previous);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ru.dugaweld.www.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Основной пул и необязательный пул реплики для чтения. Метрики Hikari обоих пулов
+ * (в том числе hikaricp.connections.usage - время удержания соединения) публикуются
+ * с тегом pool=primary / pool=replica.
+ */
+@Slf4j
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    public ReadWriteRoutingDataSource routingDataSource(
+            DataSourceProperties properties,
+            MeterRegistry meterRegistry,
+            @Value("${catalog.datasource.replica.url}") String replicaUrl,
+            @Value("${catalog.datasource.replica.username}") String replicaUsername,
+            @Value("${catalog.datasource.replica.password}") String replicaPassword,
+            @Value("${catalog.datasource.replica.maximum-pool-size}") int replicaPoolSize,
+            @Value("${catalog.datasource.replica.connection-timeout}") Duration replicaConnectionTimeout,
+            @Value("${catalog.datasource.replica.retry-after}") Duration replicaRetryAfter) {
+        MicrometerMetricsTrackerFactory metrics = new MicrometerMetricsTrackerFactory(meterRegistry);
+
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+        // Пакет insert отправляется одним многострочным запросом
+        primary.addDataSourceProperty("reWriteBatchedInserts", "true");
+        primary.setMetricsTrackerFactory(metrics);
+
+        HikariDataSource replica = null;
+        if (replicaUrl != null && !replicaUrl.isBlank()) {
+            replica = new HikariDataSource();
+            replica.setPoolName("replica");
+            replica.setJdbcUrl(replicaUrl);
+            replica.setUsername(replicaUsername);
+            replica.setPassword(replicaPassword);
+            replica.setMaximumPoolSize(replicaPoolSize);
+            replica.setConnectionTimeout(replicaConnectionTimeout.toMillis());
+            replica.setReadOnly(true);
+            // Недоступная при старте реплика не должна мешать запуску приложения
+            replica.setInitializationFailTimeout(-1);
+            replica.setMetricsTrackerFactory(metrics);
+            log.info("Чтение из реплики включено: {}", replicaUrl);
+        }
+        return new ReadWriteRoutingDataSource(primary, replica, replicaRetryAfter);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
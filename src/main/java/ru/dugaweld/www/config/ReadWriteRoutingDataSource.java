@@ -0,0 +1,108 @@
+package ru.dugaweld.www.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Read-only транзакции получают соединение из пула реплики, остальные - из основного пула.
+ * Если реплика не настроена или не отвечает, все идет в основную базу; после ошибки
+ * реплика пропускается на retryAfter.
+ *
+ * Работает только за LazyConnectionDataSourceProxy: соединение должно браться
+ * после того, как менеджер транзакций выставил признак read-only.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractDataSource implements Closeable {
+    private static final ThreadLocal<Boolean> FORCE_PRIMARY = new ThreadLocal<>();
+
+    private final HikariDataSource primary;
+    private final HikariDataSource replica;
+    private final long retryAfterMillis;
+
+    private volatile long replicaRetryAt;
+
+    public ReadWriteRoutingDataSource(HikariDataSource primary, HikariDataSource replica, Duration retryAfter) {
+        this.primary = primary;
+        this.replica = replica;
+        this.retryAfterMillis = retryAfter.toMillis();
+    }
+
+    /**
+     * Выполняет действие на основной базе даже внутри read-only транзакции.
+     * Нужно там, где отставание реплики недопустимо: перестроение кешей сразу после коммита
+     * и ответы с ETag версии каталога, см. {@link CatalogReadFilter}.
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = forcePrimary();
+        try {
+            return action.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    public static void onPrimary(Runnable action) {
+        onPrimary(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Включает чтение с основной базы для текущего потока; возвращает прежнее значение для {@link #restore}
+     */
+    static Boolean forcePrimary() {
+        Boolean previous = FORCE_PRIMARY.get();
+        FORCE_PRIMARY.set(Boolean.TRUE);
+        return previous;
+    }
+
+    static void restore(Boolean previous) {
+        if (previous == null) {
+            FORCE_PRIMARY.remove();
+        } else {
+            FORCE_PRIMARY.set(previous);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (useReplica()) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                replicaRetryAt = System.currentTimeMillis() + retryAfterMillis;
+                log.warn("Реплика недоступна, чтение идет в основную базу: {}", e.getMessage());
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    private boolean useReplica() {
+        return replica != null
+            && TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+            && FORCE_PRIMARY.get() == null
+            && System.currentTimeMillis() >= replicaRetryAt;
+    }
+
+    @Override
+    public void close() {
+        if (replica != null) {
+            replica.close();
+        }
+        primary.close();
+    }
+}
@@ -0,0 +1,23 @@
+package ru.dugaweld.www.config;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Функция HQL/Criteria для полнотекстового условия в выдаче товаров:
+ * product_search_matches(searchVector, query) - это search_vector @@ websearch_to_tsquery('russian', query),
+ * то же условие, что и в поиске ProductRepository, поэтому используется GIN-индекс.
+ * Подключается через META-INF/services.
+ */
+public class SearchFunctionContributor implements FunctionContributor {
+    public static final String MATCHES = "product_search_matches";
+
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        functionContributions.getFunctionRegistry().registerPattern(
+            MATCHES,
+            "(?1 @@ websearch_to_tsquery('russian', ?2))",
+            functionContributions.getTypeConfiguration().getBasicTypeRegistry().resolve(StandardBasicTypes.BOOLEAN));
+    }
+}
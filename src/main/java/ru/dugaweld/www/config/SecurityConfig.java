@@ -33,6 +33,8 @@ public class SecurityConfig {
                 .cors(withDefaults())
                 .sessionManagement(sess -> sess.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
+                        // До общего permitAll для /products/**, иначе правило не сработает
+                        .requestMatchers(HttpMethod.PATCH, "/products/**").hasAuthority("ROLE_ADMIN")
                         .requestMatchers(
                                 "/auth/**",
                                 "/v3/api-docs/**",
@@ -42,6 +44,8 @@ public class SecurityConfig {
                                 "/categories/**"
                         ).permitAll()
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
+                        // Метрики кешей, пулов и JVM - только администраторам, до общего правила для GET
+                        .requestMatchers("/actuator/metrics", "/actuator/metrics/**").hasAuthority("ROLE_ADMIN")
                         .requestMatchers(HttpMethod.GET, "/**").permitAll()
                         .requestMatchers(HttpMethod.POST, "/products/**", "/categories/**").hasAuthority("ROLE_ADMIN")
                         .requestMatchers(HttpMethod.PUT, "/products/**", "/categories/**").hasAuthority("ROLE_ADMIN")
@@ -61,7 +65,7 @@ public class SecurityConfig {
                 "http://localhost:5173",
                 "http://141.105.71.70:3000"
         ));
-        config.setAllowedMethods(java.util.List.of("GET", "POST", "PUT", "DELETE", "OPTIONS"));
+        config.setAllowedMethods(java.util.List.of("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
         config.setAllowedHeaders(java.util.List.of("*"));
         config.setExposedHeaders(java.util.List.of("*"));
         config.setAllowCredentials(true);
@@ -5,31 +5,65 @@ import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import ru.dugaweld.www.dto.CategoryDto;
+import ru.dugaweld.www.dto.CategoryPathItemDto;
+import ru.dugaweld.www.services.CatalogSnapshot;
+import ru.dugaweld.www.services.CatalogVersion;
 import ru.dugaweld.www.services.CategoryService;
 
 import java.net.URI;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/categories")
 @Tag(name = "Категории")
 public class CategoryController {
     private final CategoryService categoryService;
+    private final CatalogVersion catalogVersion;
+    private final CatalogSnapshot catalogSnapshot;
 
-    public CategoryController(CategoryService categoryService) {
+    public CategoryController(CategoryService categoryService, CatalogVersion catalogVersion,
+                              CatalogSnapshot catalogSnapshot) {
         this.categoryService = categoryService;
+        this.catalogVersion = catalogVersion;
+        this.catalogSnapshot = catalogSnapshot;
     }
 
+    // GET-обработчики проверяют версию каталога: при совпадении ETag ответ 304 без тела
+
     @GetMapping
-    public List<CategoryDto> all() { return categoryService.findAll(); }
+    public ResponseEntity<?> all(ServletWebRequest request) {
+        // Готовые байты из снимка, если он актуален
+        CatalogSnapshot.Document snapshot = catalogSnapshot.categories();
+        if (snapshot != null) {
+            return catalogSnapshot.respond(snapshot, request);
+        }
+        if (catalogVersion.checkNotModified(request)) {
+            return null;
+        }
+        return ResponseEntity.ok(categoryService.findAll());
+    }
 
     @GetMapping("/{id}")
-    public ResponseEntity<CategoryDto> byId(@PathVariable Long id) {
+    public ResponseEntity<CategoryDto> byId(@PathVariable Long id, ServletWebRequest request) {
+        if (catalogVersion.checkNotModified(request)) {
+            return null;
+        }
         CategoryDto dto = categoryService.findById(id);
         return dto == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(dto);
     }
 
+    @GetMapping("/{id}/path")
+    public ResponseEntity<List<CategoryPathItemDto>> path(@PathVariable Long id, ServletWebRequest request) {
+        if (catalogVersion.checkNotModified(request)) {
+            return null;
+        }
+        List<CategoryPathItemDto> path = categoryService.findPath(id);
+        return path == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(path);
+    }
+
     @PostMapping
     @PreAuthorize("hasAuthority('ROLE_ADMIN')")
     public ResponseEntity<CategoryDto> create(@Valid @RequestBody CategoryDto dto) {
@@ -39,8 +73,12 @@ public class CategoryController {
 
     @PutMapping("/{id}")
     @PreAuthorize("hasAuthority('ROLE_ADMIN')")
-    public CategoryDto update(@PathVariable Long id, @Valid @RequestBody CategoryDto dto) {
-        return categoryService.update(id, dto);
+    public ResponseEntity<?> update(@PathVariable Long id, @Valid @RequestBody CategoryDto dto) {
+        try {
+            return ResponseEntity.ok(categoryService.update(id, dto));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @DeleteMapping("/{id}")
@@ -50,13 +88,25 @@ public class CategoryController {
         return ResponseEntity.noContent().build();
     }
 
+    @PostMapping("/stats/recalculate")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public Map<String, Integer> recalculateStats() {
+        return Map.of("categories", categoryService.recalculateStats());
+    }
+
     @GetMapping("/root")
-    public List<CategoryDto> rootCategories() { 
+    public List<CategoryDto> rootCategories(ServletWebRequest request) { 
+        if (catalogVersion.checkNotModified(request)) {
+            return null;
+        }
         return categoryService.findRootCategories(); 
     }
 
     @GetMapping("/{parentId}/subcategories")
-    public List<CategoryDto> subcategories(@PathVariable Long parentId) { 
+    public List<CategoryDto> subcategories(@PathVariable Long parentId, ServletWebRequest request) { 
+        if (catalogVersion.checkNotModified(request)) {
+            return null;
+        }
         return categoryService.findSubcategories(parentId); 
     }
 }
@@ -6,10 +6,12 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import ru.dugaweld.www.services.ImageRefService;
 import ru.dugaweld.www.services.MinIOService;
 
 import java.io.InputStream;
@@ -21,9 +23,11 @@ import java.io.InputStream;
 public class FileController {
     
     private final MinIOService minIOService;
+    private final ImageRefService imageRefService;
     
-    public FileController(MinIOService minIOService) {
+    public FileController(MinIOService minIOService, ImageRefService imageRefService) {
         this.minIOService = minIOService;
+        this.imageRefService = imageRefService;
     }
     
     @PostMapping("/upload")
@@ -106,6 +110,11 @@ public class FileController {
             if (!minIOService.fileExists(fileName)) {
                 return ResponseEntity.notFound().build();
             }
+            // Объекты общие у товаров с одинаковыми изображениями
+            if (imageRefService.isReferenced(fileName)) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body("Файл используется товарами");
+            }
             
             minIOService.deleteFile(fileName);
             log.info("Файл '{}' успешно удален", fileName);
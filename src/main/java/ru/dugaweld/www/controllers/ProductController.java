@@ -3,20 +3,41 @@ package ru.dugaweld.www.controllers;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.dugaweld.www.dto.ProductDetailDto;
 import ru.dugaweld.www.dto.ProductDto;
-import ru.dugaweld.www.dto.CsvProductDto;
+import ru.dugaweld.www.dto.CsvImportJobDto;
 import ru.dugaweld.www.dto.CsvImportRequest;
+import ru.dugaweld.www.dto.ProductFilter;
+import ru.dugaweld.www.dto.ProductMoveDto;
+import ru.dugaweld.www.dto.ProductPatchDto;
+import ru.dugaweld.www.dto.ProductPriceChangeDto;
+import ru.dugaweld.www.dto.SuggestionDto;
+import ru.dugaweld.www.services.ProductBulkService;
 import ru.dugaweld.www.services.ProductService;
+import ru.dugaweld.www.services.CatalogSnapshot;
+import ru.dugaweld.www.services.CatalogVersion;
+import ru.dugaweld.www.services.CsvImportJobService;
 import ru.dugaweld.www.services.CsvProductService;
+import ru.dugaweld.www.services.SuggestionIndex;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 @Slf4j
 @RestController
@@ -24,30 +45,182 @@ import java.util.List;
 @Tag(name = "Товары")
 public class ProductController {
     private final ProductService productService;
+    private final ProductBulkService productBulkService;
     private final CsvProductService csvProductService;
+    private final CsvImportJobService csvImportJobService;
+    private final SuggestionIndex suggestionIndex;
+    private final CatalogVersion catalogVersion;
+    private final CatalogSnapshot catalogSnapshot;
     
-    public ProductController(ProductService productService, CsvProductService csvProductService) {
+    public ProductController(ProductService productService, ProductBulkService productBulkService,
+                             CsvProductService csvProductService, CsvImportJobService csvImportJobService,
+                             SuggestionIndex suggestionIndex, CatalogVersion catalogVersion,
+                             CatalogSnapshot catalogSnapshot) {
         this.productService = productService;
+        this.productBulkService = productBulkService;
         this.csvProductService = csvProductService;
+        this.csvImportJobService = csvImportJobService;
+        this.suggestionIndex = suggestionIndex;
+        this.catalogVersion = catalogVersion;
+        this.catalogSnapshot = catalogSnapshot;
     }
 
+    /**
+     * Без параметров возвращает весь список (старое поведение). Если передан любой параметр
+     * пагинации или фильтра - отдается страница {@link ProductPageDto} с курсором следующей страницы,
+     * а при facets=true еще и счетчики для фильтров. Фильтр по категориям включает их подкатегории,
+     * q - полнотекстовый запрос, сужающий и страницу, и счетчики.
+     */
     @GetMapping
-    public List<ProductDto> all() {
-        log.info("Получение товаров");
-        List<ProductDto> products = productService.findAll();
-        log.info("Найдено товаров: {}", products.size());
-        for (ProductDto product : products) {
-            System.out.println("Название: " + product.getName());
+    public ResponseEntity<?> all(@RequestParam(required = false) String cursor,
+                                 @RequestParam(required = false) Integer size,
+                                 @RequestParam(required = false) String sort,
+                                 @RequestParam(required = false) List<Long> categoryIds,
+                                 @RequestParam(defaultValue = "true") boolean includeDescendants,
+                                 @RequestParam(required = false) BigDecimal minPrice,
+                                 @RequestParam(required = false) BigDecimal maxPrice,
+                                 @RequestParam(defaultValue = "false") boolean facets,
+                                 @RequestParam(required = false) String q,
+                                 ServletWebRequest request) {
+        if (catalogVersion.checkNotModified(request)) {
+            return null;
+        }
+        if (cursor == null && size == null && sort == null
+                && categoryIds == null && minPrice == null && maxPrice == null && !facets && q == null) {
+            List<ProductDto> products = productService.findAll();
+            log.info("Найдено товаров: {}", products.size());
+            return ResponseEntity.ok(products);
+        }
+        try {
+            ProductFilter filter = productService.filter(categoryIds, includeDescendants, minPrice, maxPrice, q);
+            return ResponseEntity.ok(productService.findPage(filter, sort, cursor, size, facets));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
-        return products;
     }
 
+    /**
+     * includeDescendants=true добавляет товары всех подкатегорий - вместо обхода дерева с клиента.
+     */
     @GetMapping("/by-category/{categoryId}")
-    public List<ProductDto> byCategory(@PathVariable Long categoryId) { return productService.findByCategory(categoryId); }
+    public ResponseEntity<?> byCategory(@PathVariable Long categoryId,
+                                        @RequestParam(defaultValue = "false") boolean includeDescendants,
+                                        @RequestParam(required = false) String cursor,
+                                        @RequestParam(required = false) Integer size,
+                                        @RequestParam(required = false) String sort,
+                                        ServletWebRequest request) {
+        if (catalogVersion.checkNotModified(request)) {
+            return null;
+        }
+        if (cursor == null && size == null && sort == null) {
+            return ResponseEntity.ok(includeDescendants
+                ? productService.findByCategoryWithDescendants(categoryId)
+                : productService.findByCategory(categoryId));
+        }
+        try {
+            ProductFilter filter = productService.filter(List.of(categoryId), includeDescendants, null, null);
+            return ResponseEntity.ok(productService.findPage(filter, sort, cursor, size, false));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Первая страница товаров каждой корневой категории (с подкатегориями).
+     * Отдается из заранее построенного снимка каталога, если он актуален.
+     */
+    @GetMapping("/root-categories")
+    public ResponseEntity<?> rootCategoryPages(ServletWebRequest request) {
+        CatalogSnapshot.Document snapshot = catalogSnapshot.rootPages();
+        if (snapshot != null) {
+            return catalogSnapshot.respond(snapshot, request);
+        }
+        if (catalogVersion.checkNotModified(request)) {
+            return null;
+        }
+        return ResponseEntity.ok(productService.findRootCategoryPages());
+    }
+
+    /**
+     * Несколько товаров одним запросом (сетки карточек, корзина, просмотренные).
+     * POST-вариант - для длинных списков, не помещающихся в URL.
+     */
+    @GetMapping("/batch")
+    public ResponseEntity<?> batch(@RequestParam List<Long> ids, ServletWebRequest request) {
+        if (catalogVersion.checkNotModified(request)) {
+            return null;
+        }
+        return batch(ids);
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> batchPost(@RequestBody List<Long> ids) {
+        return batch(ids);
+    }
+
+    private ResponseEntity<?> batch(List<Long> ids) {
+        try {
+            return ResponseEntity.ok(productService.findByIds(ids));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Выгрузка всего каталога для интеграций: format=json (массив) или ndjson (объект на строку).
+     * Ответ пишется потоком по мере чтения из базы.
+     */
+    @GetMapping("/export")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "json") String format) {
+        boolean ndjson = "ndjson".equalsIgnoreCase(format);
+        if (!ndjson && !"json".equalsIgnoreCase(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> productService.export(out, ndjson);
+        return ResponseEntity.ok()
+            .contentType(ndjson ? MediaType.parseMediaType("application/x-ndjson") : MediaType.APPLICATION_JSON)
+            .header(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"products." + (ndjson ? "ndjson" : "json") + "\"")
+            .body(body);
+    }
+
+    /**
+     * Полнотекстовый поиск по названию и описанию. По умолчанию фильтр по категории
+     * включает ее подкатегории.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> search(@RequestParam("q") String query,
+                                    @RequestParam(required = false) Long categoryId,
+                                    @RequestParam(defaultValue = "true") boolean includeDescendants,
+                                    @RequestParam(defaultValue = "0") int page,
+                                    @RequestParam(required = false) Integer size,
+                                    ServletWebRequest request) {
+        if (catalogVersion.checkNotModified(request)) {
+            return null;
+        }
+        try {
+            return ResponseEntity.ok(productService.search(query, categoryId, includeDescendants, page, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Подсказки для строки поиска: названия товаров и категорий по префиксу, из памяти.
+     */
+    @GetMapping("/suggest")
+    public List<SuggestionDto> suggest(@RequestParam("q") String query,
+                                       @RequestParam(required = false) Integer limit) {
+        return suggestionIndex.suggest(query, limit);
+    }
 
     @GetMapping("/{id}")
-    public ResponseEntity<ProductDto> byId(@PathVariable Long id) {
-        ProductDto dto = productService.findById(id);
+    public ResponseEntity<ProductDetailDto> byId(@PathVariable Long id, ServletWebRequest request) {
+        if (catalogVersion.checkNotModified(request)) {
+            return null;
+        }
+        ProductDetailDto dto = productService.findDetailById(id);
         return dto == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(dto);
     }
 
@@ -76,6 +249,24 @@ public class ProductController {
         return productService.update(id, dto);
     }
 
+    /**
+     * Частичное изменение: применяются только поля из тела запроса.
+     * 409 - товар изменен после того, как клиент получил версию.
+     */
+    @PatchMapping(value = "/{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<?> patch(@PathVariable Long id, @RequestBody ProductPatchDto patch) {
+        try {
+            return ResponseEntity.ok(productService.patch(id, patch));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.notFound().build();
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Товар был изменен другим пользователем");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @DeleteMapping("/{id}")
 //    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
     public ResponseEntity<Void> delete(@PathVariable Long id) {
@@ -83,8 +274,61 @@ public class ProductController {
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Массовое создание товаров из JSON-массива (например, загрузка прайс-листа)
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<?> createBulk(@RequestBody List<ProductDto> products) {
+        try {
+            return ResponseEntity.ok(productBulkService.createAll(products));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Массовое обновление товаров по id: все строки или ни одной
+     */
+    @PutMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<?> updateBulk(@RequestBody List<ProductDto> products) {
+        try {
+            return ResponseEntity.ok(productBulkService.updateAll(products));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Изменение цены по отбору: категория с подкатегориями, диапазон цен, список id
+     */
+    @PostMapping(value = "/bulk/price", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<?> adjustPrices(@RequestBody ProductPriceChangeDto request) {
+        try {
+            return ResponseEntity.ok(productBulkService.adjustPrices(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Перенос товаров по отбору в другую категорию
+     */
+    @PostMapping(value = "/bulk/move", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<?> moveToCategory(@RequestBody ProductMoveDto request) {
+        try {
+            return ResponseEntity.ok(productBulkService.moveToCategory(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @PostMapping(value = "/preview-csv", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<?> previewCsv(@RequestParam("file") MultipartFile csvFile) {
+    public ResponseEntity<?> previewCsv(@RequestParam("file") MultipartFile csvFile,
+                                        @RequestParam(defaultValue = "10") int rows) {
         try {
             if (csvFile.isEmpty()) {
                 return ResponseEntity.badRequest().body("Файл не выбран");
@@ -95,17 +339,9 @@ public class ProductController {
                 return ResponseEntity.badRequest().body("Файл должен иметь расширение .csv");
             }
             
-            List<CsvProductDto> previewData = csvProductService.parseCsvFile(csvFile);
-            
-            // Получаем заголовки из первой строки файла
-            String[] csvHeaders = csvProductService.getCsvHeaders(csvFile);
-            
-            return ResponseEntity.ok(java.util.Map.of(
-                "csvHeaders", csvHeaders,
-                "targetFields", new String[]{"name", "description", "price", "categoryId", "imageUrl"},
-                "previewData", previewData,
-                "totalRows", previewData.size()
-            ));
+            try (InputStream in = csvFile.getInputStream()) {
+                return ResponseEntity.ok(csvProductService.preview(in, csvFile.getSize(), rows));
+            }
             
         } catch (IOException e) {
             log.error("Ошибка при чтении CSV файла", e);
@@ -128,23 +364,53 @@ public class ProductController {
                 return ResponseEntity.badRequest().body("Файл должен иметь расширение .csv");
             }
             
-            List<ProductDto> importedProducts = csvProductService.importProductsFromCsv(csvFile);
-            
-            return ResponseEntity.ok(java.util.Map.of(
-                "message", "Импорт завершен успешно",
-                "importedCount", importedProducts.size(),
-                "products", importedProducts
-            ));
+            CsvImportJobDto job = csvImportJobService.submit(csvFile, null);
+            return ResponseEntity.accepted()
+                .location(URI.create("/products/import-jobs/" + job.getId()))
+                .body(job);
             
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
         } catch (IOException e) {
-            log.error("Ошибка при чтении CSV файла", e);
+            log.error("Ошибка при сохранении CSV файла", e);
             return ResponseEntity.badRequest().body("Ошибка при чтении файла: " + e.getMessage());
-        } catch (Exception e) {
-            log.error("Ошибка при импорте товаров", e);
-            return ResponseEntity.internalServerError().body("Ошибка при импорте: " + e.getMessage());
         }
     }
 
+    @GetMapping("/import-jobs")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public List<CsvImportJobDto> importJobs() {
+        return csvImportJobService.findAll();
+    }
+
+    @GetMapping("/import-jobs/{id}")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<CsvImportJobDto> importJob(@PathVariable String id) {
+        CsvImportJobDto job = csvImportJobService.find(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
+    @GetMapping(value = "/import-jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<SseEmitter> importJobEvents(@PathVariable String id) {
+        SseEmitter emitter = csvImportJobService.subscribe(id);
+        if (emitter == null) {
+            return ResponseEntity.notFound().build();
+        }
+        // nginx по умолчанию буферизует ответ, и события дошли бы только по завершении задачи
+        return ResponseEntity.ok()
+            .header("X-Accel-Buffering", "no")
+            .cacheControl(CacheControl.noCache())
+            .body(emitter);
+    }
+
+    @DeleteMapping("/import-jobs/{id}")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<CsvImportJobDto> cancelImportJob(@PathVariable String id) {
+        CsvImportJobDto job = csvImportJobService.cancel(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
+
     @PostMapping(value = "/import-csv-mapped", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> importFromCsvWithMapping(@RequestBody CsvImportRequest request) {
         try {
@@ -1,7 +1,10 @@
 package ru.dugaweld.www.dto;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.NotBlank;
 
+import java.math.BigDecimal;
+
 public class CategoryDto {
     private Long id;
 
@@ -16,6 +19,20 @@ public class CategoryDto {
 
     private String parentCategoryName;
 
+    // Счетчики из category_stats, только для чтения
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long productCount;
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long subtreeProductCount;
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private BigDecimal minPrice;
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private BigDecimal maxPrice;
+
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
     public String getName() { return name; }
@@ -28,6 +45,14 @@ public class CategoryDto {
     public void setParentCategoryId(Long parentCategoryId) { this.parentCategoryId = parentCategoryId; }
     public String getParentCategoryName() { return parentCategoryName; }
     public void setParentCategoryName(String parentCategoryName) { this.parentCategoryName = parentCategoryName; }
+    public long getProductCount() { return productCount; }
+    public void setProductCount(long productCount) { this.productCount = productCount; }
+    public long getSubtreeProductCount() { return subtreeProductCount; }
+    public void setSubtreeProductCount(long subtreeProductCount) { this.subtreeProductCount = subtreeProductCount; }
+    public BigDecimal getMinPrice() { return minPrice; }
+    public void setMinPrice(BigDecimal minPrice) { this.minPrice = minPrice; }
+    public BigDecimal getMaxPrice() { return maxPrice; }
+    public void setMaxPrice(BigDecimal maxPrice) { this.maxPrice = maxPrice; }
 }
 
 
@@ -0,0 +1,16 @@
+package ru.dugaweld.www.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Звено хлебных крошек: категория без описания и счетчиков
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CategoryPathItemDto {
+    private Long id;
+    private String name;
+}
@@ -0,0 +1,39 @@
+package ru.dugaweld.www.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Состояние фонового импорта CSV
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CsvImportJobDto {
+    private String id;
+    private String fileName;
+    private Status status;
+    private long processed;
+    private long imported;
+    private long failed;
+    /** Строк в секунду с момента запуска */
+    private double rowsPerSecond;
+    private Instant createdAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+    /** Причина ошибки задачи целиком, для FAILED */
+    private String message;
+    private List<String> errors;
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+}
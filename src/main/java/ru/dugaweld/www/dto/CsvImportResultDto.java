@@ -0,0 +1,32 @@
+package ru.dugaweld.www.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CsvImportResultDto {
+    /** Прочитано строк данных */
+    private long processed;
+    private long imported;
+    private long failed;
+    /** Первые ошибки с номерами строк */
+    private List<String> errors;
+    private long millis;
+    private List<ChunkStats> chunks;
+    /** Импорт остановлен по запросу, незаписанная порция отброшена */
+    private boolean cancelled;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ChunkStats {
+        private int rows;
+        private boolean committed;
+        private long millis;
+    }
+}
@@ -0,0 +1,19 @@
+package ru.dugaweld.www.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CsvPreviewDto {
+    private String[] csvHeaders;
+    private List<String> targetFields;
+    private List<CsvProductDto> previewData;
+    private long totalRows;
+    /** totalRows оценен по размеру файла и средней длине строк образца */
+    private boolean totalRowsEstimated;
+}
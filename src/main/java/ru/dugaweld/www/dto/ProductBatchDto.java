@@ -0,0 +1,17 @@
+package ru.dugaweld.www.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductBatchDto {
+    /** Найденные товары в порядке запроса, без повторов */
+    private List<ProductDto> items;
+    /** Запрошенные id, которых нет в каталоге */
+    private List<Long> missing;
+}
@@ -0,0 +1,21 @@
+package ru.dugaweld.www.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Отбор товаров для массовых операций. Условия объединяются через И;
+ * хотя бы одно должно быть задано.
+ */
+@Data
+@NoArgsConstructor
+public class ProductBulkFilterDto {
+    private List<Long> categoryIds;
+    private boolean includeDescendants = true;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private List<Long> ids;
+}
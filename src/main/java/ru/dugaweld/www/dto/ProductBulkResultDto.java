@@ -0,0 +1,16 @@
+package ru.dugaweld.www.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductBulkResultDto {
+    private int count;
+    /** Id товаров в порядке запроса */
+    private List<Long> ids;
+}
@@ -0,0 +1,16 @@
+package ru.dugaweld.www.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductBulkUpdateResultDto {
+    private long affected;
+    /** Число измененных товаров по категориям (для переноса - по исходным категориям) */
+    private Map<Long, Long> byCategory;
+}
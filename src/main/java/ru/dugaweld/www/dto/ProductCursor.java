@@ -0,0 +1,62 @@
+package ru.dugaweld.www.dto;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Курсор keyset-пагинации: сортировка, значение ключа сортировки и id последнего
+ * отданного товара. Клиенту передается в виде непрозрачной base64url-строки.
+ */
+public final class ProductCursor {
+    private static final String SEPARATOR = "|";
+
+    private final ProductSort sort;
+    private final Long id;
+    private final String value;
+
+    public ProductCursor(ProductSort sort, Long id, String value) {
+        this.sort = sort;
+        this.id = id;
+        this.value = value;
+    }
+
+    public static ProductCursor after(ProductSort sort, ProductDto last) {
+        String value = switch (sort) {
+            case ID -> null;
+            case NAME -> last.getName();
+            case PRICE_ASC, PRICE_DESC -> last.getPrice().toPlainString();
+        };
+        return new ProductCursor(sort, last.getId(), value);
+    }
+
+    public static ProductCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            // Значение идет последним: в названии товара может встретиться разделитель
+            String[] parts = raw.split("\\|", 3);
+            ProductSort sort = ProductSort.valueOf(parts[0]);
+            Long id = Long.parseLong(parts[1]);
+            String value = parts.length > 2 ? parts[2] : null;
+            if (sort != ProductSort.ID && value == null) {
+                throw new IllegalArgumentException("В курсоре нет значения сортировки");
+            }
+            if (sort == ProductSort.PRICE_ASC || sort == ProductSort.PRICE_DESC) {
+                new BigDecimal(value);
+            }
+            return new ProductCursor(sort, id, value);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Некорректный курсор: " + token, e);
+        }
+    }
+
+    public String encode() {
+        String raw = sort.name() + SEPARATOR + id + (value != null ? SEPARATOR + value : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public ProductSort getSort() { return sort; }
+    public Long getId() { return id; }
+    public String getValue() { return value; }
+    public BigDecimal getPriceValue() { return new BigDecimal(value); }
+}
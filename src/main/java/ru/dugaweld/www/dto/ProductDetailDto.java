@@ -0,0 +1,24 @@
+package ru.dugaweld.www.dto;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Карточка товара вместе с цепочкой категорий от корня.
+ * Собирается копированием, закешированный ProductDto не изменяется.
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class ProductDetailDto extends ProductDto {
+    private List<CategoryPathItemDto> categoryPath;
+
+    public ProductDetailDto(ProductDto product, List<CategoryPathItemDto> categoryPath) {
+        super(product.getId(), product.getName(), product.getDescription(), product.getPrice(),
+            product.getImageUrl(), product.getCategoryId(), product.getVersion());
+        this.categoryPath = categoryPath;
+    }
+}
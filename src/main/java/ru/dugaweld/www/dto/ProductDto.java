@@ -1,5 +1,6 @@
 package ru.dugaweld.www.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
@@ -25,24 +26,21 @@ public class ProductDto {
     @NotNull
     private Long categoryId;
 
+    /** Версия товара для PATCH: клиент возвращает ее в поле version */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long version;
+
+    /**
+     * Используется в проекционных запросах ProductRepository (select new ...) и поиске
+     */
+    public ProductDto(Long id, String name, String description, BigDecimal price, String imageUrl, Long categoryId,
+                      Long version) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.price = price;
+        this.imageUrl = imageUrl;
+        this.categoryId = categoryId;
+        this.version = version;
+    }
 }
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
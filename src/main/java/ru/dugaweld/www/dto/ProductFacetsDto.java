@@ -0,0 +1,40 @@
+package ru.dugaweld.www.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Агрегаты для фильтров каталога. Счетчики по категориям учитывают фильтр по цене,
+ * счетчики по ценовым диапазонам - фильтр по категориям; total учитывает оба.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductFacetsDto {
+    private long total;
+    private List<CategoryCount> categories;
+    private List<PriceBucket> prices;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CategoryCount {
+        private Long categoryId;
+        private long count;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PriceBucket {
+        /** Нижняя граница включительно, null - без ограничения */
+        private BigDecimal from;
+        /** Верхняя граница не включительно, null - без ограничения */
+        private BigDecimal to;
+        private long count;
+    }
+}
@@ -0,0 +1,42 @@
+package ru.dugaweld.www.dto;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+
+/**
+ * Фильтр выдачи товаров. Любое поле может быть null - тогда условие не применяется.
+ * Границы цены включительные.
+ */
+public final class ProductFilter {
+    private final Collection<Long> categoryIds;
+    private final BigDecimal minPrice;
+    private final BigDecimal maxPrice;
+    private final String query;
+
+    public ProductFilter(Collection<Long> categoryIds, BigDecimal minPrice, BigDecimal maxPrice) {
+        this(categoryIds, minPrice, maxPrice, null);
+    }
+
+    /**
+     * query - полнотекстовый запрос (websearch_to_tsquery, конфигурация russian)
+     */
+    public ProductFilter(Collection<Long> categoryIds, BigDecimal minPrice, BigDecimal maxPrice, String query) {
+        this.categoryIds = categoryIds;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.query = query;
+    }
+
+    public static ProductFilter byCategories(Collection<Long> categoryIds) {
+        return new ProductFilter(categoryIds, null, null);
+    }
+
+    public Collection<Long> getCategoryIds() { return categoryIds; }
+    public BigDecimal getMinPrice() { return minPrice; }
+    public BigDecimal getMaxPrice() { return maxPrice; }
+    public String getQuery() { return query; }
+
+    public boolean hasCategories() { return categoryIds != null; }
+    public boolean hasPriceRange() { return minPrice != null || maxPrice != null; }
+    public boolean hasQuery() { return query != null; }
+}
@@ -0,0 +1,11 @@
+package ru.dugaweld.www.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class ProductMoveDto {
+    private ProductBulkFilterDto filter;
+    private Long targetCategoryId;
+}
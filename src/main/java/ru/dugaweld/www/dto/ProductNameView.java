@@ -0,0 +1,9 @@
+package ru.dugaweld.www.dto;
+
+/**
+ * Id и название товара - все, что нужно индексу подсказок.
+ */
+public interface ProductNameView {
+    Long getId();
+    String getName();
+}
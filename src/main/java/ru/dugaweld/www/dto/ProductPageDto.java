@@ -0,0 +1,22 @@
+package ru.dugaweld.www.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductPageDto {
+    private List<ProductDto> items;
+
+    /** Курсор следующей страницы, null если страница последняя */
+    private String next;
+
+    /** Заполняется только по запросу facets=true */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ProductFacetsDto facets;
+}
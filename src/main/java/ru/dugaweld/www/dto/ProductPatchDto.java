@@ -0,0 +1,35 @@
+package ru.dugaweld.www.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Частичное изменение товара. Jackson вызывает сеттеры только для полей, присутствующих
+ * в JSON, поэтому отсутствующее поле не меняется, а явный null очищает значение
+ * (для description и imageUrl). version - версия товара, с которой работал клиент.
+ */
+@Getter
+public class ProductPatchDto {
+    private Long version;
+    private String name;
+    private String description;
+    private BigDecimal price;
+    private String imageUrl;
+    private Long categoryId;
+
+    @JsonIgnore
+    private final Set<String> present = new HashSet<>();
+
+    public void setVersion(Long version) { this.version = version; }
+    public void setName(String name) { this.name = name; present.add("name"); }
+    public void setDescription(String description) { this.description = description; present.add("description"); }
+    public void setPrice(BigDecimal price) { this.price = price; present.add("price"); }
+    public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; present.add("imageUrl"); }
+    public void setCategoryId(Long categoryId) { this.categoryId = categoryId; present.add("categoryId"); }
+
+    public boolean has(String field) { return present.contains(field); }
+}
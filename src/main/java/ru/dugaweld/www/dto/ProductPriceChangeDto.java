@@ -0,0 +1,18 @@
+package ru.dugaweld.www.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Изменение цены: либо в процентах (7 - плюс 7%), либо на абсолютную сумму.
+ * Цена не опускается ниже нуля и округляется до копеек.
+ */
+@Data
+@NoArgsConstructor
+public class ProductPriceChangeDto {
+    private ProductBulkFilterDto filter;
+    private BigDecimal percent;
+    private BigDecimal amount;
+}
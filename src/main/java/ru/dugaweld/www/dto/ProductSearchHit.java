@@ -0,0 +1,21 @@
+package ru.dugaweld.www.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Строка результата полнотекстового поиска (проекция нативного запроса).
+ */
+public interface ProductSearchHit {
+    Long getId();
+    String getName();
+    String getDescription();
+    BigDecimal getPrice();
+    String getImageUrl();
+    Long getCategoryId();
+    Long getVersion();
+    Float getRank();
+
+    default ProductDto toDto() {
+        return new ProductDto(getId(), getName(), getDescription(), getPrice(), getImageUrl(), getCategoryId(), getVersion());
+    }
+}
@@ -0,0 +1,18 @@
+package ru.dugaweld.www.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSearchPageDto {
+    /** Товары по убыванию релевантности */
+    private List<ProductDto> items;
+    private int page;
+    private int size;
+    private boolean hasNext;
+}
@@ -0,0 +1,38 @@
+package ru.dugaweld.www.dto;
+
+/**
+ * Поддерживаемые варианты сортировки постраничной выдачи товаров.
+ * Каждый вариант дополняется сортировкой по id, чтобы порядок был стабильным.
+ */
+public enum ProductSort {
+    ID("id", "id", true),
+    NAME("name", "name", true),
+    PRICE_ASC("price-asc", "price", true),
+    PRICE_DESC("price-desc", "price", false);
+
+    private final String param;
+    private final String attribute;
+    private final boolean ascending;
+
+    ProductSort(String param, String attribute, boolean ascending) {
+        this.param = param;
+        this.attribute = attribute;
+        this.ascending = ascending;
+    }
+
+    public String getParam() { return param; }
+    public String getAttribute() { return attribute; }
+    public boolean isAscending() { return ascending; }
+
+    public static ProductSort fromParam(String value) {
+        if (value == null || value.isBlank()) {
+            return ID;
+        }
+        for (ProductSort sort : values()) {
+            if (sort.param.equalsIgnoreCase(value.trim())) {
+                return sort;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестная сортировка: " + value);
+    }
+}
@@ -0,0 +1,19 @@
+package ru.dugaweld.www.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Корневая категория и первая страница товаров ее поддерева (для главной страницы).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RootCategoryPageDto {
+    private CategoryDto category;
+    private List<ProductDto> items;
+    private String next;
+}
@@ -0,0 +1,15 @@
+package ru.dugaweld.www.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestionDto {
+    /** PRODUCT или CATEGORY */
+    private String type;
+    private Long id;
+    private String text;
+}
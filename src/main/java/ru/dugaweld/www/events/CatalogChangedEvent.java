@@ -0,0 +1,35 @@
+package ru.dugaweld.www.events;
+
+/**
+ * Публикуется сервисами каталога при любом изменении товаров или категорий.
+ * Слушатели обрабатывают его после коммита транзакции (@TransactionalEventListener).
+ * entityId == null означает, что могли измениться любые сущности этого типа.
+ * remote - событие пришло от другого экземпляра приложения через LISTEN/NOTIFY.
+ */
+public class CatalogChangedEvent {
+    public enum EntityType {
+        PRODUCT,
+        CATEGORY
+    }
+
+    private final EntityType entityType;
+    private final Long entityId;
+    private final boolean remote;
+
+    public CatalogChangedEvent(EntityType entityType, Long entityId) {
+        this(entityType, entityId, false);
+    }
+
+    public CatalogChangedEvent(EntityType entityType, Long entityId, boolean remote) {
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.remote = remote;
+    }
+
+    public static CatalogChangedEvent product(Long id) { return new CatalogChangedEvent(EntityType.PRODUCT, id); }
+    public static CatalogChangedEvent category(Long id) { return new CatalogChangedEvent(EntityType.CATEGORY, id); }
+
+    public EntityType getEntityType() { return entityType; }
+    public Long getEntityId() { return entityId; }
+    public boolean isRemote() { return remote; }
+}
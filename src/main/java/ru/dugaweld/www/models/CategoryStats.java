@@ -0,0 +1,35 @@
+package ru.dugaweld.www.models;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * Счетчики товаров категории. Изменяются только запросами {@code CategoryStatsRepository}.
+ * min/max цены считаются по товарам самой категории, без подкатегорий.
+ */
+@Entity
+@Table(name = "category_stats")
+@Getter
+@Setter
+@NoArgsConstructor
+public class CategoryStats {
+    @Id
+    @Column(name = "category_id")
+    private Long categoryId;
+
+    @Column(name = "product_count", nullable = false)
+    private long productCount;
+
+    @Column(name = "subtree_product_count", nullable = false)
+    private long subtreeProductCount;
+
+    @Column(name = "min_price")
+    private BigDecimal minPrice;
+
+    @Column(name = "max_price")
+    private BigDecimal maxPrice;
+}
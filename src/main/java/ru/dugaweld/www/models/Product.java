@@ -13,8 +13,10 @@ import java.math.BigDecimal;
 @Setter
 @NoArgsConstructor
 public class Product {
+    // Пул из 50 id на одно обращение к последовательности: без IDENTITY Hibernate может пакетировать вставки
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+    @SequenceGenerator(name = "products_seq", sequenceName = "products_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -30,6 +32,14 @@ public class Product {
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "category_id")
     private Category category;
+
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
+    // Генерируется базой (changeset 010), нужен только для условия поиска в выдаче
+    @Column(name = "search_vector", columnDefinition = "tsvector", insertable = false, updatable = false)
+    private String searchVector;
 }
 
 
@@ -0,0 +1,72 @@
+package ru.dugaweld.www.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.dugaweld.www.models.CategoryStats;
+
+import java.util.Collection;
+
+/**
+ * Все изменения - одним upsert-запросом. Перед запросом сбрасываются изменения товаров
+ * текущей транзакции, чтобы min/max и пересчет видели их.
+ */
+public interface CategoryStatsRepository extends JpaRepository<CategoryStats, Long> {
+
+    /**
+     * Прибавляет delta к числу товаров категории и заново берет min/max цены
+     * (два спуска по индексу (category_id, price, id)).
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+        insert into category_stats (category_id, product_count, subtree_product_count, min_price, max_price)
+        select :categoryId, :delta, 0, min(p.price), max(p.price) from products p where p.category_id = :categoryId
+        on conflict (category_id) do update set
+            product_count = category_stats.product_count + excluded.product_count,
+            min_price = excluded.min_price,
+            max_price = excluded.max_price
+        """, nativeQuery = true)
+    int adjustDirect(@Param("categoryId") Long categoryId, @Param("delta") long delta);
+
+    /**
+     * Прибавляет delta к счетчику поддерева категории и всех ее предков.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+        insert into category_stats (category_id, product_count, subtree_product_count)
+        select c.id, 0, :delta from categories c where c.id in (:categoryIds)
+        on conflict (category_id) do update set
+            subtree_product_count = category_stats.subtree_product_count + excluded.subtree_product_count
+        """, nativeQuery = true)
+    int adjustSubtree(@Param("categoryIds") Collection<Long> categoryIds, @Param("delta") long delta);
+
+    /**
+     * Полный пересчет по таблице products. Поддеревья раскрываются рекурсивным запросом;
+     * path хранит пройденные категории, чтобы цикл в parent_category_id не зациклил запрос.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+        insert into category_stats (category_id, product_count, subtree_product_count, min_price, max_price)
+        with recursive direct as (
+            select c.id, count(p.id) as cnt, min(p.price) as min_price, max(p.price) as max_price
+            from categories c left join products p on p.category_id = c.id
+            group by c.id
+        ), subtree (root_id, id, path) as (
+            select id, id, array[id] from categories
+            union all
+            select s.root_id, c.id, s.path || c.id from subtree s join categories c on c.parent_category_id = s.id
+            where c.id <> all(s.path)
+        )
+        select d.id, d.cnt, t.total, d.min_price, d.max_price
+        from direct d
+        join (select s.root_id, sum(d2.cnt) as total from subtree s join direct d2 on d2.id = s.id group by s.root_id) t
+            on t.root_id = d.id
+        on conflict (category_id) do update set
+            product_count = excluded.product_count,
+            subtree_product_count = excluded.subtree_product_count,
+            min_price = excluded.min_price,
+            max_price = excluded.max_price
+        """, nativeQuery = true)
+    int recalculateAll();
+}
@@ -1,12 +1,64 @@
 package ru.dugaweld.www.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.dugaweld.www.dto.ProductDto;
+import ru.dugaweld.www.dto.ProductNameView;
+import ru.dugaweld.www.dto.ProductSearchHit;
 import ru.dugaweld.www.models.Product;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductRepositoryCustom {
+    /**
+     * Проекция на колонки ProductDto. p.category.id читается из внешнего ключа,
+     * поэтому категория не загружается и запрос всегда один. Версия нужна всем DTO,
+     * попадающим в ProductCache: по карточке из кеша клиент отправляет PATCH.
+     */
+    String DTO_PROJECTION = "select new ru.dugaweld.www.dto.ProductDto("
+        + "p.id, p.name, p.description, p.price, p.imageUrl, p.category.id, p.version) from Product p";
+
+    /**
+     * Полнотекстовый поиск по сгенерированной колонке search_vector (GIN-индекс, конфигурация russian).
+     */
+    String SEARCH_SELECT = "select p.id as id, p.name as name, p.description as description, p.price as price, "
+        + "p.image_url as \"imageUrl\", p.category_id as \"categoryId\", p.version as version, ts_rank(p.search_vector, q) as rank "
+        + "from products p, websearch_to_tsquery('russian', :query) q where p.search_vector @@ q ";
+    String SEARCH_ORDER = "order by rank desc, p.id limit :limit offset :offset";
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
     List<Product> findByCategoryId(Long categoryId);
+
+    @Query(DTO_PROJECTION + " order by p.id")
+    List<ProductDto> findAllDto();
+
+    @Query(DTO_PROJECTION + " where p.category.id = :categoryId order by p.id")
+    List<ProductDto> findDtoByCategoryId(@Param("categoryId") Long categoryId);
+
+    @Query(DTO_PROJECTION + " where p.category.id in :categoryIds order by p.id")
+    List<ProductDto> findDtoByCategoryIdIn(@Param("categoryIds") Collection<Long> categoryIds);
+
+    @Query(DTO_PROJECTION + " where p.id = :id")
+    Optional<ProductDto> findDtoById(@Param("id") Long id);
+
+    @Query(DTO_PROJECTION + " where p.id in :ids")
+    List<ProductDto> findDtoByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select p.id as id, p.name as name from Product p")
+    List<ProductNameView> findAllNames();
+
+    @Query(value = SEARCH_SELECT + SEARCH_ORDER, nativeQuery = true)
+    List<ProductSearchHit> search(@Param("query") String query,
+                                  @Param("limit") int limit,
+                                  @Param("offset") long offset);
+
+    @Query(value = SEARCH_SELECT + "and p.category_id in (:categoryIds) " + SEARCH_ORDER, nativeQuery = true)
+    List<ProductSearchHit> searchInCategories(@Param("query") String query,
+                                              @Param("categoryIds") Collection<Long> categoryIds,
+                                              @Param("limit") int limit,
+                                              @Param("offset") long offset);
 }
 
 
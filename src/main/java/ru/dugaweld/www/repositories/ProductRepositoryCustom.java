@@ -0,0 +1,45 @@
+package ru.dugaweld.www.repositories;
+
+import ru.dugaweld.www.dto.ProductCursor;
+import ru.dugaweld.www.dto.ProductDto;
+import ru.dugaweld.www.dto.ProductFacetsDto;
+import ru.dugaweld.www.dto.ProductFilter;
+import ru.dugaweld.www.dto.ProductSort;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public interface ProductRepositoryCustom {
+    /**
+     * Страница товаров по keyset-курсору. Без курсора возвращается первая страница.
+     * Читаются только колонки ProductDto.
+     */
+    List<ProductDto> findPage(ProductFilter filter, ProductSort sort, ProductCursor cursor, int limit);
+
+    /**
+     * Счетчики по категориям, по ценовым диапазонам и общее число совпадений одним запросом
+     * (grouping sets). priceBounds - возрастающие границы диапазонов.
+     */
+    ProductFacetsDto findFacets(ProductFilter filter, List<BigDecimal> priceBounds);
+
+    /**
+     * Все товары в порядке id потоком с ограниченным fetch size. Строки - проекции,
+     * в контексте персистентности они не копятся. Поток нужно читать внутри транзакции и закрыть.
+     */
+    Stream<ProductDto> streamAll(int fetchSize);
+
+    /**
+     * Меняет цену всех отобранных товаров одним UPDATE ... RETURNING. Задается ровно одно
+     * из percent/amount. Возвращает число измененных товаров по категориям.
+     */
+    Map<Long, Long> adjustPrices(ProductFilter filter, Collection<Long> ids, BigDecimal percent, BigDecimal amount);
+
+    /**
+     * Переносит отобранные товары в категорию одним UPDATE ... RETURNING. Товары, уже лежащие
+     * в ней, не затрагиваются. Возвращает число перенесенных товаров по исходным категориям.
+     */
+    Map<Long, Long> moveToCategory(ProductFilter filter, Collection<Long> ids, Long targetCategoryId);
+}
@@ -0,0 +1,280 @@
+package ru.dugaweld.www.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import ru.dugaweld.www.config.SearchFunctionContributor;
+import ru.dugaweld.www.dto.ProductCursor;
+import ru.dugaweld.www.dto.ProductDto;
+import ru.dugaweld.www.dto.ProductFacetsDto;
+import ru.dugaweld.www.dto.ProductFilter;
+import ru.dugaweld.www.dto.ProductSort;
+import ru.dugaweld.www.models.Product;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class ProductRepositoryImpl implements ProductRepositoryCustom {
+    private static final String SEARCH_CONDITION = "search_vector @@ websearch_to_tsquery('russian', :query)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<ProductDto> findPage(ProductFilter filter, ProductSort sort, ProductCursor cursor, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ProductDto> query = cb.createQuery(ProductDto.class);
+        Root<Product> product = query.from(Product.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (filter.hasCategories()) {
+            Collection<Long> categoryIds = filter.getCategoryIds();
+            Path<Long> categoryId = product.get("category").get("id");
+            predicates.add(categoryIds.size() == 1
+                ? cb.equal(categoryId, categoryIds.iterator().next())
+                : categoryId.in(categoryIds));
+        }
+        if (filter.getMinPrice() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(product.get("price"), filter.getMinPrice()));
+        }
+        if (filter.getMaxPrice() != null) {
+            predicates.add(cb.lessThanOrEqualTo(product.get("price"), filter.getMaxPrice()));
+        }
+        if (filter.hasQuery()) {
+            // Функция из SearchFunctionContributor: search_vector @@ websearch_to_tsquery(...)
+            predicates.add(cb.isTrue(cb.function(SearchFunctionContributor.MATCHES, Boolean.class,
+                product.get("searchVector"), cb.literal(filter.getQuery()))));
+        }
+        if (cursor != null) {
+            predicates.add(after(cb, product, sort, cursor));
+        }
+
+        query.select(cb.construct(ProductDto.class,
+                product.get("id"),
+                product.get("name"),
+                product.get("description"),
+                product.get("price"),
+                product.get("imageUrl"),
+                product.get("category").get("id"),
+                product.get("version")))
+            .where(predicates.toArray(new Predicate[0]))
+            .orderBy(order(cb, product, sort));
+
+        return entityManager.createQuery(query)
+            .setMaxResults(limit)
+            .getResultList();
+    }
+
+    private List<Order> order(CriteriaBuilder cb, Root<Product> product, ProductSort sort) {
+        List<Order> orders = new ArrayList<>();
+        if (sort != ProductSort.ID) {
+            Path<?> key = product.get(sort.getAttribute());
+            orders.add(sort.isAscending() ? cb.asc(key) : cb.desc(key));
+        }
+        // id как стабильный tiebreaker, в том же направлении, чтобы индекс (key, id) читался одним проходом
+        orders.add(sort.isAscending() ? cb.asc(product.get("id")) : cb.desc(product.get("id")));
+        return orders;
+    }
+
+    private Predicate after(CriteriaBuilder cb, Root<Product> product, ProductSort sort, ProductCursor cursor) {
+        Path<Long> id = product.get("id");
+        return switch (sort) {
+            case ID -> cb.greaterThan(id, cursor.getId());
+            case NAME -> after(cb, product.<String>get("name"), cursor.getValue(), id, cursor.getId(), true);
+            case PRICE_ASC -> after(cb, product.<BigDecimal>get("price"), cursor.getPriceValue(), id, cursor.getId(), true);
+            case PRICE_DESC -> after(cb, product.<BigDecimal>get("price"), cursor.getPriceValue(), id, cursor.getId(), false);
+        };
+    }
+
+    /**
+     * (key, id) строго после (value, lastId) в заданном направлении. Избыточное
+     * условие key >= value (key <= value по убыванию) дает планировщику начало
+     * диапазона в индексе (key, id); без него OR не ограничивает сканирование.
+     */
+    private <T extends Comparable<? super T>> Predicate after(CriteriaBuilder cb, Path<T> key, T value,
+                                                              Path<Long> id, Long lastId, boolean ascending) {
+        Predicate rangeStart = ascending ? cb.greaterThanOrEqualTo(key, value) : cb.lessThanOrEqualTo(key, value);
+        Predicate beyondKey = ascending ? cb.greaterThan(key, value) : cb.lessThan(key, value);
+        Predicate beyondId = ascending ? cb.greaterThan(id, lastId) : cb.lessThan(id, lastId);
+        return cb.and(rangeStart, cb.or(beyondKey, cb.and(cb.equal(key, value), beyondId)));
+    }
+
+    @Override
+    public Stream<ProductDto> streamAll(int fetchSize) {
+        return entityManager.createQuery(ProductRepository.DTO_PROJECTION + " order by p.id", ProductDto.class)
+            .setHint("org.hibernate.fetchSize", fetchSize)
+            .setHint("org.hibernate.readOnly", true)
+            .getResultStream();
+    }
+
+    @Override
+    public ProductFacetsDto findFacets(ProductFilter filter, List<BigDecimal> priceBounds) {
+        String priceCondition = priceCondition(filter);
+        String categoryCondition = filter.hasCategories() ? "category_id in (:categoryIds)" : "true";
+        // Границы берутся из конфигурации и уже разобраны как BigDecimal, поэтому подставляются литералами
+        String bounds = priceBounds.stream().map(BigDecimal::toPlainString).collect(Collectors.joining(","));
+
+        StringBuilder sql = new StringBuilder()
+            .append("select grouping(category_id) as g_category, grouping(bucket) as g_bucket, category_id, bucket, ")
+            .append("count(*) filter (where in_price) as by_category, ")
+            .append("count(*) filter (where in_category) as by_price, ")
+            .append("count(*) filter (where in_price and in_category) as total ")
+            .append("from (select category_id, width_bucket(price, array[").append(bounds).append("]::numeric[]) as bucket, ")
+            .append(priceCondition).append(" as in_price, ")
+            .append(categoryCondition).append(" as in_category from products");
+        List<String> where = new ArrayList<>();
+        if (filter.hasQuery()) {
+            // Поиск сужает выдачу целиком, а не является одним из фасетов
+            where.add(SEARCH_CONDITION);
+        }
+        if (filter.hasPriceRange() && filter.hasCategories()) {
+            // Строки, не прошедшие ни один из фильтров, не попадают ни в один счетчик
+            where.add("(" + priceCondition + " or " + categoryCondition + ")");
+        }
+        if (!where.isEmpty()) {
+            sql.append(" where ").append(String.join(" and ", where));
+        }
+        sql.append(") s group by grouping sets ((category_id), (bucket), ())");
+
+        Query query = entityManager.createNativeQuery(sql.toString());
+        if (filter.hasCategories()) {
+            query.setParameter("categoryIds", filter.getCategoryIds());
+        }
+        if (filter.getMinPrice() != null) {
+            query.setParameter("minPrice", filter.getMinPrice());
+        }
+        if (filter.getMaxPrice() != null) {
+            query.setParameter("maxPrice", filter.getMaxPrice());
+        }
+        if (filter.hasQuery()) {
+            query.setParameter("query", filter.getQuery());
+        }
+
+        long total = 0;
+        List<ProductFacetsDto.CategoryCount> categories = new ArrayList<>();
+        Map<Integer, Long> buckets = new HashMap<>();
+        for (Object row : query.getResultList()) {
+            Object[] columns = (Object[]) row;
+            boolean categoryRow = ((Number) columns[0]).intValue() == 0;
+            boolean bucketRow = ((Number) columns[1]).intValue() == 0;
+            if (categoryRow) {
+                long count = ((Number) columns[4]).longValue();
+                if (columns[2] != null && count > 0) {
+                    categories.add(new ProductFacetsDto.CategoryCount(((Number) columns[2]).longValue(), count));
+                }
+            } else if (bucketRow) {
+                buckets.put(((Number) columns[3]).intValue(), ((Number) columns[5]).longValue());
+            } else {
+                total = ((Number) columns[6]).longValue();
+            }
+        }
+
+        // width_bucket: 0 - ниже первой границы, priceBounds.size() - не ниже последней
+        List<ProductFacetsDto.PriceBucket> prices = new ArrayList<>();
+        for (int i = 0; i <= priceBounds.size(); i++) {
+            BigDecimal from = i == 0 ? null : priceBounds.get(i - 1);
+            BigDecimal to = i == priceBounds.size() ? null : priceBounds.get(i);
+            prices.add(new ProductFacetsDto.PriceBucket(from, to, buckets.getOrDefault(i, 0L)));
+        }
+        categories.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return new ProductFacetsDto(total, categories, prices);
+    }
+
+    @Override
+    public Map<Long, Long> adjustPrices(ProductFilter filter, Collection<Long> ids, BigDecimal percent, BigDecimal amount) {
+        String newPrice = percent != null
+            ? "round(price * (1 + cast(:change as numeric) / 100), 2)"
+            : "price + cast(:change as numeric)";
+        String sql = "with updated as (update products set price = greatest(" + newPrice + ", 0), version = version + 1 "
+            + "where " + bulkCondition(filter, ids) + " returning category_id) "
+            + "select category_id, count(*) from updated group by category_id";
+
+        Query query = entityManager.createNativeQuery(sql);
+        bindBulkFilter(query, filter, ids);
+        query.setParameter("change", percent != null ? percent : amount);
+        return countsByCategory(query);
+    }
+
+    @Override
+    public Map<Long, Long> moveToCategory(ProductFilter filter, Collection<Long> ids, Long targetCategoryId) {
+        String sql = "with updated as (update products p set category_id = :target, version = p.version + 1 "
+            + "from (select id, category_id from products where " + bulkCondition(filter, ids) + ") old "
+            + "where p.id = old.id and old.category_id is distinct from :target returning old.category_id) "
+            + "select category_id, count(*) from updated group by category_id";
+
+        Query query = entityManager.createNativeQuery(sql);
+        bindBulkFilter(query, filter, ids);
+        query.setParameter("target", targetCategoryId);
+        return countsByCategory(query);
+    }
+
+    private String bulkCondition(ProductFilter filter, Collection<Long> ids) {
+        List<String> conditions = new ArrayList<>();
+        if (filter.hasCategories()) {
+            conditions.add("category_id in (:categoryIds)");
+        }
+        if (filter.hasPriceRange()) {
+            conditions.add(priceCondition(filter));
+        }
+        if (ids != null) {
+            conditions.add("id in (:ids)");
+        }
+        if (conditions.isEmpty()) {
+            throw new IllegalArgumentException("Не задан отбор товаров");
+        }
+        return String.join(" and ", conditions);
+    }
+
+    private void bindBulkFilter(Query query, ProductFilter filter, Collection<Long> ids) {
+        // Изменения товаров в текущей транзакции должны попасть в базу до UPDATE
+        entityManager.flush();
+        if (filter.hasCategories()) {
+            query.setParameter("categoryIds", filter.getCategoryIds());
+        }
+        if (filter.getMinPrice() != null) {
+            query.setParameter("minPrice", filter.getMinPrice());
+        }
+        if (filter.getMaxPrice() != null) {
+            query.setParameter("maxPrice", filter.getMaxPrice());
+        }
+        if (ids != null) {
+            query.setParameter("ids", ids);
+        }
+    }
+
+    private Map<Long, Long> countsByCategory(Query query) {
+        Map<Long, Long> counts = new HashMap<>();
+        for (Object row : query.getResultList()) {
+            Object[] columns = (Object[]) row;
+            // Товары без категории учитываются под ключом null
+            Long categoryId = columns[0] != null ? ((Number) columns[0]).longValue() : null;
+            counts.put(categoryId, ((Number) columns[1]).longValue());
+        }
+        return counts;
+    }
+
+    private String priceCondition(ProductFilter filter) {
+        if (filter.getMinPrice() != null && filter.getMaxPrice() != null) {
+            return "(price between :minPrice and :maxPrice)";
+        }
+        if (filter.getMinPrice() != null) {
+            return "(price >= :minPrice)";
+        }
+        if (filter.getMaxPrice() != null) {
+            return "(price <= :maxPrice)";
+        }
+        return "true";
+    }
+}
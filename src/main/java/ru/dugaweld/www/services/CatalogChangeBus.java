@@ -0,0 +1,148 @@
+package ru.dugaweld.www.services;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.dugaweld.www.events.CatalogChangedEvent;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+/**
+ * Согласование локальных кешей между экземплярами приложения через PostgreSQL LISTEN/NOTIFY.
+ * Каждое локальное изменение каталога отправляет NOTIFY в той же транзакции, поэтому
+ * уведомление доставляется только после коммита. Каждый экземпляр держит отдельное
+ * соединение с LISTEN и переиздает чужие уведомления как локальные CatalogChangedEvent.
+ */
+@Slf4j
+@Component
+public class CatalogChangeBus {
+    static final String CHANNEL = "catalog_changed";
+    private static final String SEPARATOR = "|";
+    private static final int POLL_TIMEOUT_MS = 5000;
+    private static final long RECONNECT_DELAY_MS = 5000;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${catalog.notify.enabled}")
+    private boolean enabled;
+    @Value("${spring.datasource.url}")
+    private String url;
+    @Value("${spring.datasource.username}")
+    private String username;
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    private volatile boolean running;
+    private Thread listener;
+
+    public CatalogChangeBus(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Синхронный слушатель: выполняется внутри транзакции, опубликовавшей событие.
+     */
+    @EventListener
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        if (!enabled || event.isRemote()) {
+            return;
+        }
+        String payload = instanceId + SEPARATOR + event.getEntityType() + SEPARATOR
+            + (event.getEntityId() != null ? event.getEntityId() : "");
+        jdbcTemplate.query("select pg_notify(?, ?)", rs -> { }, CHANNEL, payload);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        listener = new Thread(this::listen, "catalog-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    private void listen() {
+        boolean reconnect = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                log.info("Подписка на {} установлена", CHANNEL);
+                if (reconnect) {
+                    // Пока соединения не было, уведомления могли потеряться
+                    publishRemote(new CatalogChangedEvent(CatalogChangedEvent.EntityType.PRODUCT, null, true));
+                    publishRemote(new CatalogChangedEvent(CatalogChangedEvent.EntityType.CATEGORY, null, true));
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        handle(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Соединение подписки {} потеряно: {}", CHANNEL, e.getMessage());
+                reconnect = true;
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handle(String payload) {
+        String[] parts = payload.split("\\|", -1);
+        if (parts.length != 3 || instanceId.equals(parts[0])) {
+            return;
+        }
+        try {
+            CatalogChangedEvent.EntityType type = CatalogChangedEvent.EntityType.valueOf(parts[1]);
+            Long id = parts[2].isEmpty() ? null : Long.parseLong(parts[2]);
+            publishRemote(new CatalogChangedEvent(type, id, true));
+        } catch (IllegalArgumentException e) {
+            log.warn("Некорректное уведомление {}: {}", CHANNEL, payload);
+        }
+    }
+
+    private void publishRemote(CatalogChangedEvent event) {
+        try {
+            eventPublisher.publishEvent(event);
+        } catch (Exception e) {
+            log.error("Ошибка обработки уведомления об изменении каталога: {}", e.getMessage(), e);
+        }
+    }
+}
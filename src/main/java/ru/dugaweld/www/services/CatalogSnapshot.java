@@ -0,0 +1,166 @@
+package ru.dugaweld.www.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.dugaweld.www.config.ReadWriteRoutingDataSource;
+import ru.dugaweld.www.events.CatalogChangedEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Заранее сериализованные и сжатые ответы для самых горячих чтений: всё дерево категорий
+ * и первые страницы товаров корневых категорий. Документы перестраиваются в фоне после
+ * изменений каталога; пока новый документ не готов, контроллеры отвечают по обычному пути.
+ */
+@Slf4j
+@Component
+public class CatalogSnapshot {
+    private final CategoryService categoryService;
+    private final ProductService productService;
+    private final CatalogVersion catalogVersion;
+    private final ObjectMapper objectMapper;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "catalog-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+
+    private volatile Document categories;
+    private volatile Document rootPages;
+
+    public CatalogSnapshot(CategoryService categoryService, ProductService productService,
+                           CatalogVersion catalogVersion, ObjectMapper objectMapper) {
+        this.categoryService = categoryService;
+        this.productService = productService;
+        this.catalogVersion = catalogVersion;
+        this.objectMapper = objectMapper;
+    }
+
+    /** Документ всех категорий или null, если он устарел */
+    public Document categories() {
+        return fresh(categories);
+    }
+
+    /** Документ первых страниц корневых категорий или null, если он устарел */
+    public Document rootPages() {
+        return fresh(rootPages);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        scheduleRebuild();
+    }
+
+    /**
+     * После перестроения дерева категорий и увеличения версии каталога.
+     */
+    @Order(200)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        scheduleRebuild();
+    }
+
+    private void scheduleRebuild() {
+        // Серия изменений подряд схлопывается в одно перестроение
+        if (rebuildPending.compareAndSet(false, true)) {
+            executor.submit(this::rebuild);
+        }
+    }
+
+    private void rebuild() {
+        rebuildPending.set(false);
+        try {
+            // Версия читается до данных: документ может оказаться новее своей версии, но не старее
+            long version = catalogVersion.current();
+
+            // Документ получает текущую версию, поэтому данные берутся с основной базы, а не с реплики
+            categories = Document.of(version, objectMapper.writeValueAsBytes(categoryService.findAll()));
+            rootPages = Document.of(version, objectMapper.writeValueAsBytes(
+                ReadWriteRoutingDataSource.onPrimary(productService::findRootCategoryPages)));
+
+            log.info("Снимок каталога перестроен: версия {}", version);
+        } catch (Exception e) {
+            log.error("Не удалось перестроить снимок каталога: {}", e.getMessage(), e);
+        }
+    }
+
+    private Document fresh(Document document) {
+        return document != null && document.version == catalogVersion.current() ? document : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Готовый ответ: gzip, если клиент его принимает, иначе исходный JSON.
+     * ETag различается для сжатого и несжатого варианта.
+     */
+    public ResponseEntity<byte[]> respond(Document document, ServletWebRequest request) {
+        boolean useGzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (catalogVersion.checkNotModified(request, document.version, useGzip ? "-gzip" : "")) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (useGzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(document.gzip);
+        }
+        return response.body(document.json);
+    }
+
+    public static final class Document {
+        private final long version;
+        private final byte[] json;
+        private final byte[] gzip;
+
+        private Document(long version, byte[] json, byte[] gzip) {
+            this.version = version;
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        static Document of(long version, byte[] json) throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+                out.write(json);
+            }
+            return new Document(version, json, buffer.toByteArray());
+        }
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim();
+            if (coding.equals("gzip") || coding.equals("*")) {
+                boolean disabled = tokens.length > 1 && tokens[1].trim().replace(" ", "").matches("q=0(\\.0+)?");
+                return !disabled;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,68 @@
+package ru.dugaweld.www.services;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.dugaweld.www.events.CatalogChangedEvent;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Монотонно растущая версия каталога для ETag / Last-Modified. Увеличивается после коммита
+ * любого изменения товаров или категорий - позже остальных слушателей, чтобы новая версия
+ * никогда не выдавалась вместе со старыми данными из кешей.
+ */
+@Component
+public class CatalogVersion {
+    private final AtomicReference<State> state;
+
+    public CatalogVersion() {
+        // Начинаем со времени запуска, чтобы после рестарта не повторять старые ETag
+        long now = System.currentTimeMillis();
+        this.state = new AtomicReference<>(new State(now, now));
+    }
+
+    public long current() {
+        return state.get().version;
+    }
+
+    public long lastModified() {
+        return state.get().lastModified;
+    }
+
+    @Order(100)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        bump();
+    }
+
+    public void bump() {
+        long now = System.currentTimeMillis();
+        state.updateAndGet(s -> new State(s.version + 1, Math.max(now, s.lastModified)));
+    }
+
+    /**
+     * Проставляет ETag, Last-Modified и Cache-Control: no-cache. Если клиент прислал актуальные
+     * If-None-Match / If-Modified-Since, выставляет 304 и возвращает true - тогда обработчик
+     * должен сразу вернуть null, не выполняя запросов.
+     */
+    public boolean checkNotModified(ServletWebRequest request) {
+        return checkNotModified(request, current(), "");
+    }
+
+    /**
+     * Вариант для заранее построенных ответов: version - версия, по которой построено тело,
+     * variant различает представления одного URL (например, сжатое и несжатое).
+     */
+    public boolean checkNotModified(ServletWebRequest request, long version, String variant) {
+        if (request.getResponse() != null) {
+            request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        }
+        return request.checkNotModified("\"" + version + variant + "\"", lastModified());
+    }
+
+    private record State(long version, long lastModified) {
+    }
+}
@@ -1,29 +1,60 @@
 package ru.dugaweld.www.services;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import ru.dugaweld.www.dto.CategoryDto;
+import ru.dugaweld.www.dto.CategoryPathItemDto;
+import ru.dugaweld.www.events.CatalogChangedEvent;
 import ru.dugaweld.www.models.Category;
 import ru.dugaweld.www.repositories.CategoryRepository;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 @Service
 @Transactional
 public class CategoryService {
     private final CategoryRepository categoryRepository;
-
-    public CategoryService(CategoryRepository categoryRepository) {
+    private final CategoryTreeCache categoryTreeCache;
+    private final CategoryStatsService categoryStatsService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public CategoryService(CategoryRepository categoryRepository,
+                           CategoryTreeCache categoryTreeCache,
+                           CategoryStatsService categoryStatsService,
+                           ApplicationEventPublisher eventPublisher) {
         this.categoryRepository = categoryRepository;
+        this.categoryTreeCache = categoryTreeCache;
+        this.categoryStatsService = categoryStatsService;
+        this.eventPublisher = eventPublisher;
     }
 
+    // Чтение идет из снимка дерева и не открывает транзакцию
+
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<CategoryDto> findAll() {
-        return categoryRepository.findAll().stream().map(this::toDto).collect(Collectors.toList());
+        return toDtos(categoryTreeCache.current().all());
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public CategoryDto findById(Long id) {
-        return categoryRepository.findById(id).map(this::toDto).orElse(null);
+        CategoryTree.Node node = categoryTreeCache.current().get(id);
+        return node != null ? withStats(node.toDto()) : null;
+    }
+
+    /**
+     * Хлебные крошки от корня до категории. null, если категории нет.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<CategoryPathItemDto> findPath(Long id) {
+        CategoryTree tree = categoryTreeCache.current();
+        if (tree.get(id) == null) {
+            return null;
+        }
+        return tree.path(id).stream().map(CategoryTree.Node::toPathItem).collect(Collectors.toList());
     }
 
     public CategoryDto create(CategoryDto dto) {
@@ -32,34 +63,63 @@ public class CategoryService {
         category.setDescription(dto.getDescription());
         category.setImageUrl(dto.getImageUrl());
         category.setParentCategoryId(dto.getParentCategoryId());
-        return toDto(categoryRepository.save(category));
+        Category saved = categoryRepository.save(category);
+        eventPublisher.publishEvent(CatalogChangedEvent.category(saved.getId()));
+        return toDto(saved);
     }
 
     public CategoryDto update(Long id, CategoryDto dto) {
         Category existing = categoryRepository.findById(id).orElseThrow();
+        boolean moved = !Objects.equals(existing.getParentCategoryId(), dto.getParentCategoryId());
+        if (moved && dto.getParentCategoryId() != null
+                && categoryTreeCache.current().subtreeIds(id).contains(dto.getParentCategoryId())) {
+            throw new IllegalArgumentException("Категорию нельзя перенести в нее саму или в ее подкатегорию");
+        }
         existing.setName(dto.getName());
         existing.setDescription(dto.getDescription());
         existing.setImageUrl(dto.getImageUrl());
         existing.setParentCategoryId(dto.getParentCategoryId());
-        return toDto(categoryRepository.save(existing));
+        Category saved = categoryRepository.save(existing);
+        if (moved) {
+            // Счетчики поддеревьев старых и новых предков
+            categoryStatsService.recalculate();
+        }
+        eventPublisher.publishEvent(CatalogChangedEvent.category(id));
+        return toDto(saved);
     }
 
     public void delete(Long id) {
         categoryRepository.deleteById(id);
+        categoryStatsService.recalculate();
+        eventPublisher.publishEvent(CatalogChangedEvent.category(id));
     }
 
+    /**
+     * Полный пересчет статистики товаров по категориям (административная сверка).
+     */
+    public int recalculateStats() {
+        int updated = categoryStatsService.recalculate();
+        eventPublisher.publishEvent(CatalogChangedEvent.category(null));
+        return updated;
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<CategoryDto> findRootCategories() {
-        return categoryRepository.findAll().stream()
-            .filter(category -> category.getParentCategoryId() == null)
-            .map(this::toDto)
-            .collect(Collectors.toList());
+        return toDtos(categoryTreeCache.current().roots());
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<CategoryDto> findSubcategories(Long parentId) {
-        return categoryRepository.findAll().stream()
-            .filter(category -> parentId.equals(category.getParentCategoryId()))
-            .map(this::toDto)
-            .collect(Collectors.toList());
+        return toDtos(categoryTreeCache.current().children(parentId));
+    }
+
+    private List<CategoryDto> toDtos(List<CategoryTree.Node> nodes) {
+        return nodes.stream().map(node -> withStats(node.toDto())).collect(Collectors.toList());
+    }
+
+    private CategoryDto withStats(CategoryDto dto) {
+        categoryStatsService.applyTo(dto);
+        return dto;
     }
 
     private CategoryDto toDto(Category category) {
@@ -70,12 +130,13 @@ public class CategoryService {
         dto.setImageUrl(category.getImageUrl());
         dto.setParentCategoryId(category.getParentCategoryId());
         
-        // Добавляем имя родительской категории если есть
-        if (category.getParentCategoryId() != null) {
-            categoryRepository.findById(category.getParentCategoryId())
-                .ifPresent(parent -> dto.setParentCategoryName(parent.getName()));
+        // Имя родительской категории берем из снимка дерева
+        CategoryTree.Node parent = categoryTreeCache.current().get(category.getParentCategoryId());
+        if (parent != null) {
+            dto.setParentCategoryName(parent.getName());
         }
         
+        categoryStatsService.applyTo(dto);
         return dto;
     }
 }
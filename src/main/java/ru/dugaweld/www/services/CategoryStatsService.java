@@ -0,0 +1,134 @@
+package ru.dugaweld.www.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.dugaweld.www.config.ReadWriteRoutingDataSource;
+import ru.dugaweld.www.dto.CategoryDto;
+import ru.dugaweld.www.events.CatalogChangedEvent;
+import ru.dugaweld.www.models.CategoryStats;
+import ru.dugaweld.www.repositories.CategoryStatsRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Количество товаров по категориям. Таблица category_stats меняется инкрементально
+ * в транзакции записи товара, а для чтения держится в памяти целиком и перечитывается
+ * после коммита любого изменения каталога - выдача категорий не делает запросов.
+ * Транзакционны только методы записи: applyTo вызывается на каждую категорию списка.
+ */
+@Slf4j
+@Service
+public class CategoryStatsService {
+    private final CategoryStatsRepository categoryStatsRepository;
+    private final CategoryTreeCache categoryTreeCache;
+    private final TransactionTemplate readTransaction;
+
+    private volatile Map<Long, CategoryStats> stats = Map.of();
+
+    public CategoryStatsService(CategoryStatsRepository categoryStatsRepository,
+                                CategoryTreeCache categoryTreeCache,
+                                PlatformTransactionManager transactionManager) {
+        this.categoryStatsRepository = categoryStatsRepository;
+        this.categoryTreeCache = categoryTreeCache;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    @Transactional
+    public void productAdded(Long categoryId) {
+        adjust(categoryId, 1);
+    }
+
+    @Transactional
+    public void productRemoved(Long categoryId) {
+        adjust(categoryId, -1);
+    }
+
+    @Transactional
+    public void productChanged(Long oldCategoryId, Long newCategoryId, boolean priceChanged) {
+        if (Objects.equals(oldCategoryId, newCategoryId)) {
+            if (priceChanged && newCategoryId != null) {
+                categoryStatsRepository.adjustDirect(newCategoryId, 0);
+            }
+            return;
+        }
+        productRemoved(oldCategoryId);
+        productAdded(newCategoryId);
+    }
+
+    /**
+     * Изменения после массовой записи: по одному обновлению на затронутую категорию.
+     * Нулевая дельта обновляет только min/max цены.
+     */
+    @Transactional
+    public void adjustAll(Map<Long, Long> deltas) {
+        deltas.forEach(this::adjust);
+    }
+
+    private void adjust(Long categoryId, long delta) {
+        if (categoryId == null) {
+            return;
+        }
+        categoryStatsRepository.adjustDirect(categoryId, delta);
+        if (delta == 0) {
+            return;
+        }
+        List<Long> path = categoryTreeCache.current().path(categoryId).stream()
+            .map(CategoryTree.Node::getId)
+            .toList();
+        categoryStatsRepository.adjustSubtree(path.isEmpty() ? List.of(categoryId) : path, delta);
+    }
+
+    /**
+     * Полный пересчет по таблице товаров. Нужен после перемещения или удаления категорий
+     * и как административная сверка.
+     */
+    @Transactional
+    public int recalculate() {
+        int updated = categoryStatsRepository.recalculateAll();
+        log.info("Статистика категорий пересчитана: {} категорий", updated);
+        return updated;
+    }
+
+    public void applyTo(CategoryDto dto) {
+        CategoryStats entry = stats.get(dto.getId());
+        dto.setProductCount(entry != null ? entry.getProductCount() : 0);
+        dto.setSubtreeProductCount(entry != null ? entry.getSubtreeProductCount() : 0);
+        dto.setMinPrice(entry != null ? entry.getMinPrice() : null);
+        dto.setMaxPrice(entry != null ? entry.getMaxPrice() : null);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        reload();
+    }
+
+    /**
+     * После перестроения дерева категорий, до увеличения версии каталога и снимков.
+     */
+    @Order(30)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        reload();
+    }
+
+    private void reload() {
+        List<CategoryStats> rows = ReadWriteRoutingDataSource.onPrimary(
+            () -> readTransaction.execute(status -> categoryStatsRepository.findAll()));
+        stats = rows.stream().collect(Collectors.toUnmodifiableMap(CategoryStats::getCategoryId, Function.identity()));
+        log.debug("Статистика категорий перечитана: {} записей", rows.size());
+    }
+}
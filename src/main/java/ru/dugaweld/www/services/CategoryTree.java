@@ -0,0 +1,193 @@
+package ru.dugaweld.www.services;
+
+import ru.dugaweld.www.dto.CategoryDto;
+import ru.dugaweld.www.dto.CategoryPathItemDto;
+import ru.dugaweld.www.models.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Неизменяемый снимок дерева категорий. Строится целиком из таблицы categories
+ * и после этого отвечает на все чтения без обращения к базе.
+ */
+public final class CategoryTree {
+    private final long version;
+    private final Map<Long, Node> nodes;
+    private final List<Node> all;
+    private final Map<Long, List<Node>> children;
+    private final List<Node> roots;
+
+    private CategoryTree(long version, Map<Long, Node> nodes, List<Node> all,
+                         Map<Long, List<Node>> children, List<Node> roots) {
+        this.version = version;
+        this.nodes = nodes;
+        this.all = all;
+        this.children = children;
+        this.roots = roots;
+    }
+
+    public static CategoryTree build(long version, List<Category> categories) {
+        Map<Long, Category> byId = new HashMap<>();
+        for (Category category : categories) {
+            byId.put(category.getId(), category);
+        }
+
+        List<Category> sorted = new ArrayList<>(categories);
+        sorted.sort(Comparator.comparing(Category::getId));
+
+        Map<Long, Node> nodes = new HashMap<>();
+        List<Node> ordered = new ArrayList<>();
+        Map<Long, List<Node>> children = new HashMap<>();
+        List<Node> roots = new ArrayList<>();
+        for (Category category : sorted) {
+            Category parent = category.getParentCategoryId() != null ? byId.get(category.getParentCategoryId()) : null;
+            Node node = new Node(
+                category.getId(),
+                category.getName(),
+                category.getDescription(),
+                category.getImageUrl(),
+                category.getParentCategoryId(),
+                parent != null ? parent.getName() : null,
+                depthOf(category, byId)
+            );
+            nodes.put(node.id, node);
+            ordered.add(node);
+            if (node.parentId == null) {
+                roots.add(node);
+            } else if (!inCycle(category, byId)) {
+                // Категория из цикла не привязывается к родителю, иначе обход поддерева не закончится
+                children.computeIfAbsent(node.parentId, k -> new ArrayList<>()).add(node);
+            }
+        }
+        children.replaceAll((k, v) -> List.copyOf(v));
+
+        return new CategoryTree(version, Map.copyOf(nodes), List.copyOf(ordered), Map.copyOf(children), List.copyOf(roots));
+    }
+
+    private static int depthOf(Category category, Map<Long, Category> byId) {
+        int depth = 0;
+        Long parentId = category.getParentCategoryId();
+        // Посещенные предки защищают от зацикливания при битых данных
+        Set<Long> visited = new HashSet<>();
+        visited.add(category.getId());
+        while (parentId != null && visited.add(parentId)) {
+            Category parent = byId.get(parentId);
+            if (parent == null) {
+                break;
+            }
+            depth++;
+            parentId = parent.getParentCategoryId();
+        }
+        return depth;
+    }
+
+    /**
+     * Категория сама входит в цикл родителей (в том числе является своим родителем)
+     */
+    private static boolean inCycle(Category category, Map<Long, Category> byId) {
+        Set<Long> visited = new HashSet<>();
+        Long parentId = category.getParentCategoryId();
+        while (parentId != null && visited.add(parentId)) {
+            if (parentId.equals(category.getId())) {
+                return true;
+            }
+            Category parent = byId.get(parentId);
+            parentId = parent != null ? parent.getParentCategoryId() : null;
+        }
+        return false;
+    }
+
+    public long getVersion() { return version; }
+
+    public Node get(Long id) { return id != null ? nodes.get(id) : null; }
+
+    public List<Node> all() { return all; }
+
+    public List<Node> roots() { return roots; }
+
+    /**
+     * Id категории и всех ее потомков (обход в ширину по индексу детей).
+     */
+    public List<Long> subtreeIds(Long id) {
+        List<Long> ids = new ArrayList<>();
+        Set<Long> visited = new HashSet<>();
+        ids.add(id);
+        visited.add(id);
+        for (int i = 0; i < ids.size(); i++) {
+            for (Node child : children(ids.get(i))) {
+                if (visited.add(child.id)) {
+                    ids.add(child.id);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Цепочка от корня до категории включительно. Для неизвестного id - пустой список.
+     */
+    public List<Node> path(Long id) {
+        List<Node> path = new ArrayList<>();
+        Node node = get(id);
+        // Ограничение по числу категорий защищает от зацикливания при битых данных
+        while (node != null && path.size() < all.size()) {
+            path.add(node);
+            node = get(node.parentId);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    public List<Node> children(Long parentId) { return parentId != null ? children.getOrDefault(parentId, List.of()) : List.of(); }
+
+    public static final class Node {
+        private final Long id;
+        private final String name;
+        private final String description;
+        private final String imageUrl;
+        private final Long parentId;
+        private final String parentName;
+        private final int depth;
+
+        private Node(Long id, String name, String description, String imageUrl,
+                     Long parentId, String parentName, int depth) {
+            this.id = id;
+            this.name = name;
+            this.description = description;
+            this.imageUrl = imageUrl;
+            this.parentId = parentId;
+            this.parentName = parentName;
+            this.depth = depth;
+        }
+
+        public Long getId() { return id; }
+        public String getName() { return name; }
+        public String getDescription() { return description; }
+        public String getImageUrl() { return imageUrl; }
+        public Long getParentId() { return parentId; }
+        public String getParentName() { return parentName; }
+        public int getDepth() { return depth; }
+
+        public CategoryDto toDto() {
+            CategoryDto dto = new CategoryDto();
+            dto.setId(id);
+            dto.setName(name);
+            dto.setDescription(description);
+            dto.setImageUrl(imageUrl);
+            dto.setParentCategoryId(parentId);
+            dto.setParentCategoryName(parentName);
+            return dto;
+        }
+
+        public CategoryPathItemDto toPathItem() {
+            return new CategoryPathItemDto(id, name);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.dugaweld.www.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.dugaweld.www.config.ReadWriteRoutingDataSource;
+import ru.dugaweld.www.events.CatalogChangedEvent;
+import ru.dugaweld.www.repositories.CategoryRepository;
+
+/**
+ * Держит актуальный снимок {@link CategoryTree}. Снимок строится при первом обращении
+ * и перестраивается целиком после коммита любого изменения категорий;
+ * читатели всегда видят либо старый, либо новый снимок, но не промежуточное состояние.
+ */
+@Slf4j
+@Component
+public class CategoryTreeCache {
+    private final CategoryRepository categoryRepository;
+    private final TransactionTemplate readTransaction;
+
+    private volatile CategoryTree tree;
+
+    public CategoryTreeCache(CategoryRepository categoryRepository, PlatformTransactionManager transactionManager) {
+        this.categoryRepository = categoryRepository;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    public CategoryTree current() {
+        CategoryTree snapshot = tree;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = tree;
+                if (snapshot == null) {
+                    snapshot = rebuild();
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    @Order(0)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        if (event.getEntityType() == CatalogChangedEvent.EntityType.CATEGORY) {
+            rebuild();
+        }
+    }
+
+    public synchronized CategoryTree rebuild() {
+        long version = tree != null ? tree.getVersion() + 1 : 1;
+        CategoryTree snapshot = ReadWriteRoutingDataSource.onPrimary(
+            () -> readTransaction.execute(status -> CategoryTree.build(version, categoryRepository.findAll())));
+        tree = snapshot;
+        log.info("Дерево категорий перестроено: версия {}, категорий {}", version, snapshot.all().size());
+        return snapshot;
+    }
+}
@@ -0,0 +1,280 @@
+package ru.dugaweld.www.services;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.dugaweld.www.dto.ColumnMappingDto;
+import ru.dugaweld.www.dto.CsvImportJobDto;
+import ru.dugaweld.www.dto.CsvImportJobDto.Status;
+import ru.dugaweld.www.dto.CsvImportResultDto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фоновые задачи импорта CSV. Загруженный файл сохраняется во временный файл, импорт
+ * выполняется на отдельном ограниченном пуле, а не на потоке запроса. Состояние задач
+ * хранится в памяти до истечения catalog.import.retention после завершения, поэтому
+ * клиент может переподключиться после перезагрузки страницы. Подписчики SSE получают
+ * состояние раз в секунду от отдельного потока, чтобы медленный клиент не тормозил импорт.
+ */
+@Slf4j
+@Component
+public class CsvImportJobService {
+    private static final long PUSH_INTERVAL_MS = 1000;
+    private static final long EMITTER_TIMEOUT_MS = Duration.ofMinutes(30).toMillis();
+
+    private final CsvProductService csvProductService;
+    private final Duration retention;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService pusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "csv-import-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public CsvImportJobService(CsvProductService csvProductService,
+                               @Value("${catalog.import.workers}") int workers,
+                               @Value("${catalog.import.queue-capacity}") int queueCapacity,
+                               @Value("${catalog.import.retention}") Duration retention) {
+        this.csvProductService = csvProductService;
+        this.retention = retention;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread thread = new Thread(r, "csv-import-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        pusher.scheduleWithFixedDelay(this::push, PUSH_INTERVAL_MS, PUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ставит импорт в очередь и сразу возвращает задачу.
+     * IllegalStateException, если очередь заполнена.
+     */
+    public CsvImportJobDto submit(MultipartFile csvFile, List<ColumnMappingDto> columnMappings) throws IOException {
+        Path file = Files.createTempFile("csv-import-", ".csv");
+        csvFile.transferTo(file);
+        Job job = new Job(UUID.randomUUID().toString(), csvFile.getOriginalFilename(), file, columnMappings);
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            deleteQuietly(file);
+            throw new IllegalStateException("Очередь импорта заполнена, повторите позже");
+        }
+        log.info("Импорт CSV {} поставлен в очередь: файл {}, {} байт", job.id, job.fileName, csvFile.getSize());
+        return job.toDto();
+    }
+
+    /** Задача по id или null */
+    public CsvImportJobDto find(String id) {
+        Job job = jobs.get(id);
+        return job != null ? job.toDto() : null;
+    }
+
+    /** Все известные задачи, новые первыми */
+    public List<CsvImportJobDto> findAll() {
+        return jobs.values().stream()
+            .sorted(Comparator.comparing((Job job) -> job.createdAt).reversed())
+            .map(Job::toDto)
+            .toList();
+    }
+
+    /**
+     * Запрос отмены: задача в очереди не запустится, идущая остановится перед следующей строкой.
+     */
+    public CsvImportJobDto cancel(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            return null;
+        }
+        job.cancelRequested = true;
+        return job.toDto();
+    }
+
+    /**
+     * Поток SSE с событиями "progress"; после завершения задачи отправляется последнее
+     * состояние и поток закрывается.
+     */
+    public SseEmitter subscribe(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        emitter.onCompletion(() -> job.emitters.remove(emitter));
+        emitter.onTimeout(() -> job.emitters.remove(emitter));
+        emitter.onError(e -> job.emitters.remove(emitter));
+        CsvImportJobDto state = job.toDto();
+        if (!send(emitter, state)) {
+            return emitter;
+        }
+        if (state.getStatus().isFinished()) {
+            emitter.complete();
+        } else {
+            job.emitters.add(emitter);
+        }
+        return emitter;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pusher.shutdownNow();
+        jobs.values().forEach(job -> job.cancelRequested = true);
+        executor.shutdownNow();
+    }
+
+    private void run(Job job) {
+        try {
+            if (job.cancelRequested) {
+                job.finish(Status.CANCELLED, null, null);
+                return;
+            }
+            job.startedAt = Instant.now();
+            job.status = Status.RUNNING;
+            log.info("Импорт CSV {} запущен", job.id);
+            try (InputStream in = Files.newInputStream(job.file)) {
+                CsvImportResultDto result = csvProductService.importProducts(in, job.columnMappings, job);
+                job.finish(result.isCancelled() ? Status.CANCELLED : Status.COMPLETED, result, null);
+            }
+        } catch (Exception e) {
+            log.error("Импорт CSV {} завершился ошибкой", job.id, e);
+            job.finish(Status.FAILED, null, e.getMessage());
+        } finally {
+            deleteQuietly(job.file);
+        }
+    }
+
+    /**
+     * Рассылка состояния подписчикам и удаление задач, завершенных раньше срока хранения.
+     */
+    private void push() {
+        try {
+            Instant expired = Instant.now().minus(retention);
+            for (Job job : jobs.values()) {
+                if (job.finishedAt != null && job.finishedAt.isBefore(expired) && job.emitters.isEmpty()) {
+                    jobs.remove(job.id);
+                    continue;
+                }
+                if (job.emitters.isEmpty()) {
+                    continue;
+                }
+                CsvImportJobDto state = job.toDto();
+                for (SseEmitter emitter : job.emitters) {
+                    if (!send(emitter, state)) {
+                        job.emitters.remove(emitter);
+                    } else if (state.getStatus().isFinished()) {
+                        job.emitters.remove(emitter);
+                        emitter.complete();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("Ошибка рассылки состояния импорта: {}", e.getMessage(), e);
+        }
+    }
+
+    private static boolean send(SseEmitter emitter, CsvImportJobDto state) {
+        try {
+            emitter.send(SseEmitter.event().name("progress").data(state, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Клиент отключился
+            return false;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить временный файл {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static final class Job implements CsvProductService.ImportMonitor {
+        private final String id;
+        private final String fileName;
+        private final Path file;
+        private final List<ColumnMappingDto> columnMappings;
+        private final Instant createdAt = Instant.now();
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+        private volatile Status status = Status.QUEUED;
+        private volatile boolean cancelRequested;
+        private volatile long processed;
+        private volatile long imported;
+        private volatile long failed;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile String message;
+        private volatile List<String> errors = List.of();
+
+        private Job(String id, String fileName, Path file, List<ColumnMappingDto> columnMappings) {
+            this.id = id;
+            this.fileName = fileName;
+            this.file = file;
+            this.columnMappings = columnMappings;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelRequested;
+        }
+
+        @Override
+        public void onProgress(long processed, long imported, long failed) {
+            this.processed = processed;
+            this.imported = imported;
+            this.failed = failed;
+        }
+
+        private void finish(Status status, CsvImportResultDto result, String message) {
+            if (result != null) {
+                onProgress(result.getProcessed(), result.getImported(), result.getFailed());
+                this.errors = List.copyOf(result.getErrors());
+            }
+            this.message = message;
+            this.finishedAt = Instant.now();
+            this.status = status;
+            log.info("Импорт CSV {}: {}", id, status);
+        }
+
+        private CsvImportJobDto toDto() {
+            Instant started = startedAt;
+            Instant end = finishedAt != null ? finishedAt : Instant.now();
+            double rowsPerSecond = 0;
+            if (started != null) {
+                long millis = Math.max(1, Duration.between(started, end).toMillis());
+                rowsPerSecond = Math.round(processed * 10_000.0 / millis) / 10.0;
+            }
+            return new CsvImportJobDto(id, fileName, status, processed, imported, failed, rowsPerSecond,
+                createdAt, started, finishedAt, message, errors);
+        }
+    }
+}
@@ -1,303 +1,436 @@
 package ru.dugaweld.www.services;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.multipart.support.ByteArrayMultipartFileEditor;
-import ru.dugaweld.www.config.ByteArrayMultipartFile;
+import ru.dugaweld.www.dto.CsvImportResultDto;
+import ru.dugaweld.www.dto.CsvPreviewDto;
 import ru.dugaweld.www.dto.CsvProductDto;
 import ru.dugaweld.www.dto.ProductDto;
 import ru.dugaweld.www.dto.ColumnMappingDto;
-import ru.dugaweld.www.repositories.CategoryRepository;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+@Slf4j
 @Service
 public class CsvProductService {
-    private final ProductService productService;
-    private final CategoryRepository categoryRepository;
-    @Value("${saveImagesPath}")
-    private String saveImagesPath;
-    @Value("${getImagesPath}")
-    private String getImagesPath;
-
-    public CsvProductService(ProductService productService, CategoryRepository categoryRepository) {
-        this.productService = productService;
-        this.categoryRepository = categoryRepository;
-    }
+    /** Разделитель полей в выгрузках поставщиков */
+    private static final char DELIMITER = ';';
+    /** Поля товара, на которые можно сопоставить колонки CSV */
+    public static final List<String> TARGET_FIELDS = List.of("name", "description", "price", "categoryId", "imageUrl");
 
-    public List<ProductDto> importProductsFromCsv(MultipartFile csvFile) throws IOException {
-        List<CsvProductDto> csvProducts = parseCsvFile(csvFile);
-        List<ProductDto> importedProducts = new ArrayList<>();
+    /** Предел строк предпросмотра */
+    private static final int MAX_PREVIEW_ROWS = 100;
+    /** Сколько ошибок строк возвращать в отчете */
+    private static final int MAX_REPORTED_ERRORS = 100;
 
-        for (CsvProductDto csvProduct : csvProducts) {
-            try {
-                ProductDto productDto = convertCsvToProductDto(csvProduct);
+    private final ProductBulkService productBulkService;
+    private final ImageIngestService imageIngestService;
+    private final ImageRefService imageRefService;
+    private final CategoryTreeCache categoryTreeCache;
+    @Value("${catalog.import.chunk-size}")
+    private int importChunkSize;
 
-                MultipartFile imageFile = null;
-                if (csvProduct.getImageUrl() != null && !csvProduct.getImageUrl().isEmpty()) {
-                    imageFile = downloadImageFromUrl(csvProduct.getImageUrl());
-                }
-                ProductDto savedProduct = productService.create(productDto, imageFile);
-                importedProducts.add(savedProduct);
-            } catch (Exception e) {
-                // Логируем ошибку и продолжаем с следующим товаром
-                System.err.println("Ошибка при импорте товара: " + csvProduct.getName() + " - " + e.getMessage());
+    public CsvProductService(ProductBulkService productBulkService, ImageIngestService imageIngestService,
+                             ImageRefService imageRefService, CategoryTreeCache categoryTreeCache) {
+        this.productBulkService = productBulkService;
+        this.imageIngestService = imageIngestService;
+        this.imageRefService = imageRefService;
+        this.categoryTreeCache = categoryTreeCache;
+    }
+
+    /**
+     * Наблюдатель импорта: получает счетчики после каждой строки и может остановить импорт.
+     */
+    public interface ImportMonitor {
+        ImportMonitor NONE = new ImportMonitor() {
+            @Override
+            public boolean isCancelled() {
+                return false;
             }
-        }
 
-        return importedProducts;
+            @Override
+            public void onProgress(long processed, long imported, long failed) {
+            }
+        };
+
+        boolean isCancelled();
+
+        void onProgress(long processed, long imported, long failed);
     }
 
-    public List<CsvProductDto> parseCsvFile(MultipartFile csvFile) throws IOException {
-        return parseCsvFileWithMapping(csvFile, null);
+    /**
+     * Импорт в виде конвейера: строки читаются потоком, проверяются и копятся в порцию;
+     * порция из catalog.import.chunk-size строк записывается одной транзакцией с пакетной вставкой.
+     * Ошибка строки не останавливает импорт, ошибка записи отменяет только свою порцию.
+     * При отмене уже записанные порции остаются, текущая отбрасывается. Событие изменения
+     * каталога публикуется одно на весь импорт, а не на каждую порцию.
+     */
+    public CsvImportResultDto importProducts(InputStream in, List<ColumnMappingDto> columnMappings,
+                                             ImportMonitor monitor) throws IOException {
+        ImportRun run = new ImportRun(monitor);
+        try {
+            readCsv(in, columnMappings, run::accept);
+            run.flush();
+        } catch (CancellationException e) {
+            run.cancelled = true;
+            run.discard();
+        } catch (IOException | RuntimeException e) {
+            run.discard();
+            throw e;
+        } finally {
+            run.publishChange();
+        }
+        return run.result();
     }
 
-    public List<CsvProductDto> parseCsvFileWithMapping(MultipartFile csvFile, List<ColumnMappingDto> columnMappings) throws IOException {
-        List<CsvProductDto> products = new ArrayList<>();
-        
-        // Пробуем разные кодировки для лучшей совместимости
-        String[] encodings = {"UTF-8", "Windows-1251", "CP1251", "ISO-8859-1"};
-        BufferedReader reader = null;
-        
-        for (String encoding : encodings) {
+    /**
+     * Проверенная строка, ожидающая записи, и загрузка ее изображения
+     */
+    private record PendingRow(long rowNumber, ProductDto product, CompletableFuture<String> image) {
+    }
+
+    /**
+     * Состояние одного импорта: текущая порция, счетчики и ошибки
+     */
+    private final class ImportRun {
+        private final ImportMonitor monitor;
+        private final long started = System.nanoTime();
+        private final CategoryTree tree = categoryTreeCache.current();
+        private final List<PendingRow> chunk = new ArrayList<>(importChunkSize);
+        private final List<String> errors = new ArrayList<>();
+        private final List<CsvImportResultDto.ChunkStats> chunks = new ArrayList<>();
+        private long processed;
+        private long imported;
+        private long failed;
+        private boolean cancelled;
+
+        ImportRun(ImportMonitor monitor) {
+            this.monitor = monitor;
+        }
+
+        void accept(long rowNumber, CsvProductDto row) {
+            if (monitor.isCancelled() || Thread.currentThread().isInterrupted()) {
+                throw new CancellationException();
+            }
+            processed++;
             try {
-                reader = new BufferedReader(new InputStreamReader(csvFile.getInputStream(), encoding));
-                break;
+                ProductDto product = convertCsvToProductDto(row, tree);
+                // Изображение скачивается в фоне, строка ждет его только при записи порции
+                CompletableFuture<String> image = row.getImageUrl() != null && !row.getImageUrl().isBlank()
+                    ? imageIngestService.fetch(row.getImageUrl())
+                    : null;
+                chunk.add(new PendingRow(rowNumber, product, image));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
             } catch (Exception e) {
-                // Пробуем следующую кодировку
-                if (reader != null) {
-                    reader.close();
-                }
+                fail(rowNumber, e.getMessage());
+                monitor.onProgress(processed, imported, failed);
+                return;
             }
+            if (chunk.size() >= importChunkSize) {
+                flush();
+            }
+            monitor.onProgress(processed, imported, failed);
         }
-        
-        if (reader == null) {
-            // Fallback на UTF-8
-            reader = new BufferedReader(new InputStreamReader(csvFile.getInputStream(), "UTF-8"));
-        }
-        
-        try (BufferedReader finalReader = reader) {
-            String line;
-            boolean isFirstLine = true;
-            String[] headers = null;
-            
-            while ((line = finalReader.readLine()) != null) {
-                if (isFirstLine) {
-                    headers = parseCsvLine(line);
-                    isFirstLine = false;
-                    continue;
-                }
-                
-                String[] values = parseCsvLine(line);
-                if (values.length > 0) {
-                    CsvProductDto product = new CsvProductDto();
-                    
-                    if (columnMappings != null && headers != null) {
-                        // Используем маппинг колонок
-                        Map<String, String> valueMap = new HashMap<>();
-                        for (int i = 0; i < Math.min(headers.length, values.length); i++) {
-                            valueMap.put(headers[i].trim(), values[i].trim());
-                        }
-                        
-                        for (ColumnMappingDto mapping : columnMappings) {
-                            String value = valueMap.get(mapping.getCsvColumn());
-                            if (value != null) {
-                                setProductField(product, mapping.getTargetField(), value);
-                            }
-                        }
-                    } else {
-                        // Стандартное сопоставление по позиции
-                        product.setName(values.length > 0 ? values[0].trim() : "");
-                        product.setDescription(values.length > 1 ? values[1].trim() : "");
-                        product.setPrice(values.length > 2 ? values[2].trim() : "0");
-                        product.setCategoryId(values.length > 3 ? values[3].trim() : "1");
-                        product.setImageUrl(values.length > 4 ? values[4].trim() : "");
+
+        void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            long chunkStarted = System.nanoTime();
+            List<ProductDto> products = new ArrayList<>(chunk.size());
+            List<String> claimed = new ArrayList<>();
+            for (PendingRow pending : chunk) {
+                if (pending.image() != null) {
+                    try {
+                        String imageUrl = pending.image().join();
+                        claimed.add(imageUrl);
+                        pending.product().setImageUrl(imageUrl);
+                    } catch (CompletionException e) {
+                        fail(pending.rowNumber(), e.getCause().getMessage());
+                        continue;
                     }
-                    
-                    products.add(product);
                 }
+                products.add(pending.product());
             }
-        }
-        
-        return products;
-    }
-
-    public String[] getCsvHeaders(MultipartFile csvFile) throws IOException {
-        // Пробуем разные кодировки для лучшей совместимости
-        String[] encodings = {"UTF-8", "Windows-1251", "CP1251", "ISO-8859-1"};
-        BufferedReader reader = null;
-        
-        for (String encoding : encodings) {
+            chunk.clear();
+            if (products.isEmpty()) {
+                return;
+            }
+            long writeStarted = System.nanoTime();
+            boolean committed = false;
             try {
-                reader = new BufferedReader(new InputStreamReader(csvFile.getInputStream(), encoding));
-                break;
+                imported += productBulkService.createAll(products, false).getCount();
+                committed = true;
             } catch (Exception e) {
-                if (reader != null) {
-                    reader.close();
-                }
+                failed += products.size();
+                addError("Порция из " + products.size() + " строк не записана: " + e.getMessage());
+                log.error("Ошибка записи порции импорта", e);
+            } finally {
+                // Записанные товары держат свои ссылки, изображения незаписанной порции удаляются
+                releaseClaims(claimed);
             }
+            long millis = (System.nanoTime() - chunkStarted) / 1_000_000;
+            chunks.add(new CsvImportResultDto.ChunkStats(products.size(), committed, millis));
+            log.info("Порция импорта: {} строк за {} мс, из них запись {} мс", products.size(), millis,
+                (System.nanoTime() - writeStarted) / 1_000_000);
         }
-        
-        if (reader == null) {
-            reader = new BufferedReader(new InputStreamReader(csvFile.getInputStream(), "UTF-8"));
+
+        /**
+         * Отмена: незаписанная порция отбрасывается вместе с незавершенными загрузками
+         */
+        void discard() {
+            List<String> claimed = new ArrayList<>();
+            for (PendingRow pending : chunk) {
+                CompletableFuture<String> image = pending.image();
+                if (image != null && !image.cancel(true) && !image.isCompletedExceptionally()) {
+                    claimed.add(image.join());
+                }
+            }
+            chunk.clear();
+            releaseClaims(claimed);
         }
-        
-        try (BufferedReader finalReader = reader) {
-            String firstLine = finalReader.readLine();
-            if (firstLine != null) {
-                return parseCsvLine(firstLine);
+
+        /**
+         * Одно событие изменения каталога на весь импорт, если записана хоть одна порция
+         */
+        void publishChange() {
+            if (imported > 0) {
+                productBulkService.productsChanged();
             }
         }
-        
-        return new String[0];
-    }
 
-    private String[] parseCsvLine(String line) {
-        List<String> values = new ArrayList<>();
-        boolean inQuotes = false;
-        StringBuilder currentValue = new StringBuilder();
-        
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            
-            if (c == '"') {
-                inQuotes = !inQuotes;
-            } else if (c == ';' && !inQuotes) {
-                values.add(currentValue.toString());
-                currentValue = new StringBuilder();
-            } else {
-                currentValue.append(c);
+        private void releaseClaims(List<String> imageUrls) {
+            try {
+                imageRefService.releaseClaims(imageUrls);
+            } catch (Exception e) {
+                log.error("Не удалось вернуть ссылки на изображения импорта", e);
             }
         }
-        
-        values.add(currentValue.toString());
-        return values.toArray(new String[0]);
-    }
 
-    private ProductDto convertCsvToProductDto(CsvProductDto csvProduct) {
-        ProductDto productDto = new ProductDto();
-        productDto.setName(csvProduct.getName());
-        productDto.setDescription(csvProduct.getDescription());
-        
-        try {
-            productDto.setPrice(new BigDecimal(csvProduct.getPrice()));
-        } catch (NumberFormatException e) {
-            productDto.setPrice(BigDecimal.ZERO);
+        private void fail(long rowNumber, String message) {
+            failed++;
+            addError("Строка " + rowNumber + ": " + message);
         }
-        
-        try {
-            Long categoryId = Long.parseLong(csvProduct.getCategoryId());
-            // Проверяем, что категория существует
-            categoryRepository.findById(categoryId)
-                .orElseThrow(() -> new RuntimeException("Категория с ID " + categoryId + " не найдена"));
-            productDto.setCategoryId(categoryId);
-        } catch (NumberFormatException e) {
-            throw new RuntimeException("Неверный ID категории: " + csvProduct.getCategoryId());
+
+        private void addError(String error) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(error);
+            }
+        }
+
+        CsvImportResultDto result() {
+            long millis = (System.nanoTime() - started) / 1_000_000;
+            log.info("Импорт CSV {}: строк {}, импортировано {}, ошибок {}, порций {} за {} мс",
+                cancelled ? "отменен" : "завершен", processed, imported, failed, chunks.size(), millis);
+            return new CsvImportResultDto(processed, imported, failed, errors, millis, chunks, cancelled);
         }
-        
-        productDto.setImageUrl(csvProduct.getImageUrl());
-        
-        return productDto;
     }
 
-    private void setProductField(CsvProductDto product, String fieldName, String value) {
-        switch (fieldName) {
-            case "name":
-                product.setName(cleanHtmlTags(value));
-                break;
-            case "description":
-                product.setDescription(cleanHtmlTags(value));
-                break;
-            case "price":
-                product.setPrice(cleanHtmlTags(value));
-                break;
-            case "categoryId":
-                product.setCategoryId(cleanHtmlTags(value));
-                break;
-            case "imageUrl":
-                product.setImageUrl(cleanHtmlTags(value));
-                break;
+    /**
+     * Получатель строк при потоковом разборе CSV. rowNumber - номер строки в файле.
+     */
+    public interface RowHandler {
+        void handle(long rowNumber, CsvProductDto row);
+    }
+
+    /**
+     * Предпросмотр за один проход: заголовок и первые rows строк, остальное не читается.
+     * Число строк оценивается по размеру файла и средней длине строк образца; если файл
+     * кончился раньше, число точное.
+     */
+    public CsvPreviewDto preview(InputStream in, long fileSize, int rows) throws IOException {
+        int limit = Math.max(1, Math.min(rows, MAX_PREVIEW_ROWS));
+        try (CsvReader reader = CsvReader.open(in, DELIMITER)) {
+            if (!reader.nextRow()) {
+                return new CsvPreviewDto(new String[0], TARGET_FIELDS, List.of(), 0, false);
+            }
+            String[] headers = reader.row();
+            long headerChars = reader.getCharsRead();
+            Columns columns = Columns.resolve(headers, null);
+            List<CsvProductDto> sample = new ArrayList<>(limit);
+            while (sample.size() < limit && reader.nextRow()) {
+                sample.add(columns.toDto(reader));
+            }
+            long sampleChars = reader.getCharsRead() - headerChars;
+            if (sample.size() < limit || !reader.nextRow()) {
+                return new CsvPreviewDto(headers, TARGET_FIELDS, sample, sample.size(), false);
+            }
+            double headerBytes = headerChars * reader.getBytesPerChar();
+            double bytesPerRow = Math.max(1, sampleChars * reader.getBytesPerChar() / sample.size());
+            long estimated = Math.max(sample.size() + 1, Math.round((fileSize - headerBytes) / bytesPerRow));
+            return new CsvPreviewDto(headers, TARGET_FIELDS, sample, estimated, true);
         }
     }
 
-    private String cleanHtmlTags(String value) {
-        if (value == null || value.isEmpty()) return "";
-        return value.replaceAll("<[^>]*>", "").trim(); // Удаление всех HTML-тегов
+    /**
+     * Потоковый разбор: строки по одной передаются в handler, файл целиком в память не читается.
+     * Маппинг колонок сопоставляется с заголовком один раз. Возвращает число строк данных.
+     */
+    public long readCsv(InputStream in, List<ColumnMappingDto> columnMappings, RowHandler handler) throws IOException {
+        long started = System.nanoTime();
+        long rows = 0;
+        try (CsvReader reader = CsvReader.open(in, DELIMITER)) {
+            if (!reader.nextRow()) {
+                return 0;
+            }
+            Columns columns = Columns.resolve(reader.row(), columnMappings);
+            while (reader.nextRow()) {
+                handler.handle(reader.getRowNumber(), columns.toDto(reader));
+                rows++;
+            }
+            long millis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+            log.info("CSV разобран: строк {}, символов {} за {} мс", rows, reader.getCharsRead(), millis);
+        }
+        return rows;
     }
 
-private MultipartFile downloadImageFromUrl(String imageUrl) {
-    try {
-        RestTemplate restTemplate = new RestTemplate();
-        HttpHeaders headers = new HttpHeaders();
-        headers.setAccept(List.of(MediaType.IMAGE_JPEG, MediaType.IMAGE_PNG));
-        HttpEntity<String> entity = new HttpEntity<>(headers);
-
-        ResponseEntity<byte[]> response = restTemplate.exchange(
-                imageUrl,
-                HttpMethod.GET,
-                entity,
-                byte[].class
-        );
-
-        if (response.getStatusCode() != HttpStatus.OK || response.getBody() == null) {
-            throw new IOException("Ошибка загрузки изображения: статус " + response.getStatusCode());
+    /**
+     * Индексы колонок для полей товара, вычисленные по заголовку. Без маппинга
+     * используется порядок name;description;price;categoryId;imageUrl.
+     */
+    private static final class Columns {
+        private final int name;
+        private final int description;
+        private final int price;
+        private final int categoryId;
+        private final int imageUrl;
+        /** Значения из маппинга очищаются от HTML-тегов */
+        private final boolean mapped;
+
+        private Columns(int[] indexes, boolean mapped) {
+            this.name = indexes[0];
+            this.description = indexes[1];
+            this.price = indexes[2];
+            this.categoryId = indexes[3];
+            this.imageUrl = indexes[4];
+            this.mapped = mapped;
         }
 
-        String fileName = generateFileNameFromUrlOrMimeType(imageUrl, response.getHeaders().getContentType());
-        ByteArrayMultipartFile file = new ByteArrayMultipartFile(fileName, response.getBody());
+        static Columns resolve(String[] header, List<ColumnMappingDto> mappings) {
+            if (mappings == null) {
+                return new Columns(new int[]{0, 1, 2, 3, 4}, false);
+            }
+            Map<String, Integer> byName = new HashMap<>();
+            for (int i = 0; i < header.length; i++) {
+                byName.putIfAbsent(header[i].trim(), i);
+            }
+            int[] indexes = {-1, -1, -1, -1, -1};
+            for (ColumnMappingDto mapping : mappings) {
+                Integer index = byName.get(mapping.getCsvColumn());
+                int field = TARGET_FIELDS.indexOf(mapping.getTargetField());
+                if (index != null && field >= 0) {
+                    indexes[field] = index;
+                }
+            }
+            return new Columns(indexes, true);
+        }
 
-        file.saveToFile(saveImagesPath);
+        CsvProductDto toDto(CsvReader row) {
+            CsvProductDto product = new CsvProductDto();
+            if (mapped) {
+                product.setName(mappedValue(row, name));
+                product.setDescription(mappedValue(row, description));
+                product.setPrice(mappedValue(row, price));
+                product.setCategoryId(mappedValue(row, categoryId));
+                product.setImageUrl(mappedValue(row, imageUrl));
+            } else {
+                product.setName(value(row, name, ""));
+                product.setDescription(value(row, description, ""));
+                product.setPrice(value(row, price, "0"));
+                product.setCategoryId(value(row, categoryId, "1"));
+                product.setImageUrl(value(row, imageUrl, ""));
+            }
+            return product;
+        }
 
-        return file;
+        private static String value(CsvReader row, int index, String missing) {
+            String value = row.get(index);
+            return value != null ? value.trim() : missing;
+        }
 
-    } catch (Exception e) {
-        throw new RuntimeException("Не удалось загрузить изображение по URL: " + imageUrl, e);
+        private static String mappedValue(CsvReader row, int index) {
+            String value = row.get(index);
+            return value != null ? cleanHtmlTags(value) : null;
+        }
     }
-}
 
+    /**
+     * Удаление HTML-тегов без регулярного выражения; строка без '<' возвращается как есть
+     */
+    static String cleanHtmlTags(String value) {
+        if (value == null || value.isEmpty()) return "";
+        int tag = value.indexOf('<');
+        if (tag < 0) {
+            return value.trim();
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        int from = 0;
+        while (tag >= 0) {
+            int close = value.indexOf('>', tag + 1);
+            if (close < 0) {
+                break;
+            }
+            result.append(value, from, tag);
+            from = close + 1;
+            tag = value.indexOf('<', from);
+        }
+        result.append(value, from, value.length());
+        return result.toString().trim();
+    }
 
-    private String generateFileNameFromUrlOrMimeType(String imageUrl, MediaType contentType) {
-        String defaultExtension = ".jpg"; // Расширение по умолчанию
+    /**
+     * Проверка и преобразование строки. Категория ищется в снимке дерева, без запроса к базе.
+     */
+    private ProductDto convertCsvToProductDto(CsvProductDto csvProduct, CategoryTree tree) {
+        if (csvProduct.getName() == null || csvProduct.getName().isBlank()) {
+            throw new IllegalArgumentException("Не указано название");
+        }
+        ProductDto productDto = new ProductDto();
+        productDto.setName(csvProduct.getName());
+        productDto.setDescription(csvProduct.getDescription());
+        productDto.setPrice(parsePrice(csvProduct.getPrice()));
 
-        // Пытаемся извлечь расширение из URL
-        String[] urlParts = imageUrl.split("\\.");
-        if (urlParts.length > 1) {
-            String ext = urlParts[urlParts.length - 1].toLowerCase();
-            if (!ext.equals(urlParts[urlParts.length - 1])) { // Проверка на случай не корректного расширения
-                defaultExtension = "." + ext;
-            }
+        Long categoryId;
+        try {
+            categoryId = Long.parseLong(csvProduct.getCategoryId() != null ? csvProduct.getCategoryId().trim() : "");
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Неверный ID категории: " + csvProduct.getCategoryId());
+        }
+        if (tree.get(categoryId) == null) {
+            throw new IllegalArgumentException("Категория с ID " + categoryId + " не найдена");
         }
+        productDto.setCategoryId(categoryId);
+        return productDto;
+    }
 
-        // Если есть contentType, используем его для определения расширения
-        if (contentType != null) {
-            switch (contentType.toString()) {
-                case "image/png":
-                    defaultExtension = ".png";
-                    break;
-                case "image/jpeg":
-                    defaultExtension = ".jpg";
-                    break;
-                case "image/gif":
-                    defaultExtension = ".gif";
-                    break;
-                case "image/webp":
-                    defaultExtension = ".webp";
-                    break;
+    /**
+     * Цена в форматах "1234.50", "1 234,50"; пустая цена - ноль, как и раньше
+     */
+    private static BigDecimal parsePrice(String value) {
+        if (value == null || value.isBlank()) {
+            return BigDecimal.ZERO;
+        }
+        String normalized = value.replace(" ", "").replace("\u00A0", "").replace(',', '.');
+        try {
+            BigDecimal price = new BigDecimal(normalized);
+            if (price.signum() < 0) {
+                throw new IllegalArgumentException("Отрицательная цена: " + value);
             }
+            return price;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Неверная цена: " + value);
         }
-
-        // Генерируем уникальное имя файла (например, из хэша URL)
-        String uniqueName = Integer.toHexString(imageUrl.hashCode());
-        return "image_" + uniqueName + defaultExtension;
     }
 }
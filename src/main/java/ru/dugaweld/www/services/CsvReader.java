@@ -0,0 +1,271 @@
+package ru.dugaweld.www.services;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Потоковый разбор CSV по RFC 4180: поля в кавычках могут содержать разделитель,
+ * перевод строки и удвоенные кавычки. Файл читается блоками в один буфер, строка
+ * разбирается в переиспользуемый массив полей - память не зависит от размера файла.
+ *
+ * Использование: {@code while (reader.nextRow()) { reader.get(i) ... }}.
+ * Пустые строки пропускаются. Незакрытая кавычка в конце файла не считается ошибкой.
+ */
+public final class CsvReader implements Closeable {
+    /** Сколько байт смотреть при определении кодировки */
+    private static final int SNIFF_SIZE = 64 * 1024;
+    private static final Charset WINDOWS_1251 = Charset.forName("windows-1251");
+
+    private static final int FIELD = 0;
+    private static final int ROW = 1;
+    private static final int END = 2;
+
+    private final Reader reader;
+    private final char delimiter;
+    private final char[] buffer = new char[64 * 1024];
+    private final StringBuilder field = new StringBuilder(256);
+
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private boolean started;
+    private long charsRead;
+    private long rowNumber;
+    private double bytesPerChar = 1;
+
+    private String[] fields = new String[16];
+    private int size;
+    private boolean lastQuoted;
+
+    public CsvReader(Reader reader, char delimiter) {
+        this.reader = reader;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Открывает поток с определением кодировки: UTF-8, если первые 64 КБ корректны
+     * в UTF-8, иначе windows-1251 (выгрузки из 1С и Excel).
+     */
+    public static CsvReader open(InputStream in, char delimiter) throws IOException {
+        BufferedInputStream input = new BufferedInputStream(in, SNIFF_SIZE);
+        input.mark(SNIFF_SIZE);
+        byte[] sample = input.readNBytes(SNIFF_SIZE);
+        input.reset();
+        Charset charset = isUtf8(sample) ? StandardCharsets.UTF_8 : WINDOWS_1251;
+        CsvReader reader = new CsvReader(new InputStreamReader(input, charset), delimiter);
+        if (charset == StandardCharsets.UTF_8 && sample.length > 0) {
+            reader.bytesPerChar = (double) sample.length / Math.max(1, new String(sample, charset).length());
+        }
+        return reader;
+    }
+
+    private static boolean isUtf8(byte[] sample) {
+        try {
+            StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(sample, 0, utf8Boundary(sample)));
+            return true;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+
+    /** Длина образца без оборванного в конце многобайтного символа */
+    private static int utf8Boundary(byte[] sample) {
+        int end = sample.length;
+        for (int i = 1; i <= 3 && end - i >= 0; i++) {
+            int b = sample[end - i] & 0xFF;
+            if ((b & 0xC0) == 0xC0) {
+                // Начало символа: обрезаем, если за ним не хватает байтов
+                int needed = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : 2;
+                return needed > i ? end - i : end;
+            }
+            if ((b & 0x80) == 0) {
+                return end;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Переходит к следующей непустой строке. false - файл закончился.
+     * Значения предыдущей строки после вызова недоступны.
+     */
+    public boolean nextRow() throws IOException {
+        while (true) {
+            size = 0;
+            if (!fill()) {
+                return false;
+            }
+            if (!started) {
+                started = true;
+                if (buffer[pos] == '\uFEFF') {
+                    pos++;
+                }
+            }
+            int end;
+            do {
+                end = readField();
+            } while (end == FIELD);
+            rowNumber++;
+            if (size == 1 && !lastQuoted && fields[0].isEmpty()) {
+                continue;
+            }
+            return true;
+        }
+    }
+
+    public int size() { return size; }
+
+    /** Значение поля или null, если в строке меньше полей */
+    public String get(int index) {
+        return index >= 0 && index < size ? fields[index] : null;
+    }
+
+    /** Копия полей текущей строки (для заголовка) */
+    public String[] row() {
+        return Arrays.copyOf(fields, size);
+    }
+
+    /** Номер текущей строки файла без учета переводов строк внутри кавычек, с 1 */
+    public long getRowNumber() { return rowNumber; }
+
+    public long getCharsRead() { return charsRead - (limit - pos); }
+
+    /** Среднее число байт на символ в первых 64 КБ; переводит getCharsRead в позицию в файле */
+    public double getBytesPerChar() { return bytesPerChar; }
+
+    private int readField() throws IOException {
+        lastQuoted = false;
+        field.setLength(0);
+        if (!fill()) {
+            add("");
+            return END;
+        }
+        if (buffer[pos] == '"') {
+            pos++;
+            lastQuoted = true;
+            return readQuoted();
+        }
+
+        int start = pos;
+        while (true) {
+            if (pos >= limit) {
+                field.append(buffer, start, pos - start);
+                if (!fill()) {
+                    add(field.toString());
+                    return END;
+                }
+                start = pos;
+                continue;
+            }
+            char c = buffer[pos];
+            if (c == delimiter || c == '\n' || c == '\r') {
+                // Поле целиком в буфере - строка создается без промежуточного копирования
+                add(field.length() == 0 ? new String(buffer, start, pos - start)
+                    : field.append(buffer, start, pos - start).toString());
+                pos++;
+                if (c == delimiter) {
+                    return FIELD;
+                }
+                if (c == '\r') {
+                    skipLineFeed();
+                }
+                return ROW;
+            }
+            pos++;
+        }
+    }
+
+    private int readQuoted() throws IOException {
+        while (true) {
+            if (!fill()) {
+                add(field.toString());
+                return END;
+            }
+            int start = pos;
+            while (pos < limit && buffer[pos] != '"') {
+                pos++;
+            }
+            field.append(buffer, start, pos - start);
+            if (pos >= limit) {
+                continue;
+            }
+            pos++;
+            if (fill() && buffer[pos] == '"') {
+                // Удвоенная кавычка внутри поля
+                field.append('"');
+                pos++;
+                continue;
+            }
+            // Закрывающая кавычка; символы после нее до разделителя сохраняются как есть
+            while (true) {
+                if (!fill()) {
+                    add(field.toString());
+                    return END;
+                }
+                char c = buffer[pos++];
+                if (c == delimiter) {
+                    add(field.toString());
+                    return FIELD;
+                }
+                if (c == '\n' || c == '\r') {
+                    if (c == '\r') {
+                        skipLineFeed();
+                    }
+                    add(field.toString());
+                    return ROW;
+                }
+                field.append(c);
+            }
+        }
+    }
+
+    private void skipLineFeed() throws IOException {
+        if (fill() && buffer[pos] == '\n') {
+            pos++;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (pos < limit) {
+            return true;
+        }
+        if (eof) {
+            return false;
+        }
+        int read = reader.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            eof = true;
+            pos = limit = 0;
+            return false;
+        }
+        pos = 0;
+        limit = read;
+        charsRead += read;
+        return true;
+    }
+
+    private void add(String value) {
+        if (size == fields.length) {
+            fields = Arrays.copyOf(fields, size * 2);
+        }
+        fields[size++] = value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
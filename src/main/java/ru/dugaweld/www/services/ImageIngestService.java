@@ -0,0 +1,226 @@
+package ru.dugaweld.www.services;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Загрузка изображений поставщиков по URL при импорте. Один общий HTTP-клиент
+ * с пулом keep-alive соединений; одновременных загрузок не больше max-in-flight
+ * на все импорты и не больше max-per-host на один хост. Тело ответа сразу
+ * передается в MinIO, на локальный диск и целиком в память ничего не пишется.
+ */
+@Slf4j
+@Component
+public class ImageIngestService {
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final Map<String, String> EXTENSIONS = Map.of(
+        "image/jpeg", ".jpg",
+        "image/png", ".png",
+        "image/gif", ".gif",
+        "image/webp", ".webp"
+    );
+
+    private final MinIOService minIOService;
+    private final ImageRefService imageRefService;
+    private final OkHttpClient client;
+    private final Semaphore inFlight;
+    private final long maxSize;
+
+    public ImageIngestService(MinIOService minIOService, ImageRefService imageRefService,
+                              @Value("${catalog.import.images.max-in-flight}") int maxInFlight,
+                              @Value("${catalog.import.images.max-per-host}") int maxPerHost,
+                              @Value("${catalog.import.images.connect-timeout}") Duration connectTimeout,
+                              @Value("${catalog.import.images.read-timeout}") Duration readTimeout,
+                              @Value("${catalog.import.images.call-timeout}") Duration callTimeout,
+                              @Value("${catalog.import.images.max-size}") DataSize maxSize) {
+        this.minIOService = minIOService;
+        this.imageRefService = imageRefService;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxSize = maxSize.toBytes();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "image-ingest-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Dispatcher dispatcher = new Dispatcher(executor);
+        dispatcher.setMaxRequests(maxInFlight);
+        dispatcher.setMaxRequestsPerHost(maxPerHost);
+        this.client = new OkHttpClient.Builder()
+            .dispatcher(dispatcher)
+            .connectionPool(new ConnectionPool(maxInFlight, 5, TimeUnit.MINUTES))
+            .connectTimeout(connectTimeout)
+            .readTimeout(readTimeout)
+            .callTimeout(callTimeout)
+            .build();
+    }
+
+    /**
+     * Асинхронно скачивает изображение и кладет его в MinIO; результат - URL файла
+     * со ссылкой, занятой через {@link ImageRefService#store}, которую вызывающий возвращает
+     * через {@link ImageRefService#releaseClaims}. Блокируется, пока занято max-in-flight
+     * загрузок, так что разбор CSV не убегает вперед. Отмена результата обрывает HTTP-запрос,
+     * а ссылку на уже загруженный файл возвращает сама.
+     */
+    public CompletableFuture<String> fetch(String imageUrl) throws InterruptedException {
+        HttpUrl url = HttpUrl.parse(imageUrl.trim());
+        if (url == null) {
+            return CompletableFuture.failedFuture(
+                new IllegalArgumentException("Неверный URL изображения: " + imageUrl));
+        }
+        inFlight.acquire();
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Call call = client.newCall(new Request.Builder().url(url).get().build());
+        result.whenComplete((fileUrl, e) -> {
+            if (result.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                inFlight.release();
+                result.completeExceptionally(
+                    new IOException("Не удалось загрузить изображение по URL: " + imageUrl + " (" + e.getMessage() + ")", e));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    String fileUrl = store(imageUrl, response);
+                    if (!result.complete(fileUrl)) {
+                        imageRefService.releaseClaims(List.of(fileUrl));
+                    }
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    inFlight.release();
+                }
+            }
+        });
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        client.dispatcher().cancelAll();
+        client.dispatcher().executorService().shutdownNow();
+        client.connectionPool().evictAll();
+    }
+
+    private String store(String imageUrl, Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            throw new IOException("Ошибка загрузки изображения " + imageUrl + ": статус " + response.code());
+        }
+        long size = body.contentLength();
+        if (size > maxSize) {
+            throw new IOException("Изображение " + imageUrl + " больше " + maxSize + " байт");
+        }
+        MediaType mediaType = body.contentType();
+        String contentType = mediaType != null
+            ? (mediaType.type() + "/" + mediaType.subtype()).toLowerCase(Locale.ROOT)
+            : DEFAULT_CONTENT_TYPE;
+        // Content-Length может отсутствовать (chunked), поэтому предел проверяется и при чтении
+        try (InputStream in = new LimitedInputStream(body.byteStream(), maxSize, imageUrl)) {
+            String fileName = imageRefService.store(in, size, contentType, extensionOf(response.request().url(), contentType));
+            return minIOService.getFileUrl(fileName);
+        }
+    }
+
+    /**
+     * Расширение по типу содержимого, иначе по пути URL, по умолчанию .jpg
+     */
+    private static String extensionOf(HttpUrl url, String contentType) {
+        String extension = EXTENSIONS.get(contentType);
+        if (extension != null) {
+            return extension;
+        }
+        String path = url.encodedPath().toLowerCase(Locale.ROOT);
+        int dot = path.lastIndexOf('.');
+        if (dot > path.lastIndexOf('/') && EXTENSIONS.containsValue(path.substring(dot))) {
+            return path.substring(dot);
+        }
+        return ".jpg";
+    }
+
+    /**
+     * Поток, который обрывает чтение ошибкой, как только прочитано больше limit байт
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private final String imageUrl;
+        private long count;
+
+        private LimitedInputStream(InputStream in, long limit, String imageUrl) {
+            super(in);
+            this.limit = limit;
+            this.imageUrl = imageUrl;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long read) throws IOException {
+            count += read;
+            if (count > limit) {
+                throw new IOException("Изображение " + imageUrl + " больше " + limit + " байт");
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package ru.dugaweld.www.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Счетчики ссылок на объекты MinIO (таблица image_objects). Объекты именуются
+ * по содержимому и общие у разных товаров, поэтому удаляются только когда ссылок не осталось,
+ * и только после коммита.
+ * <p>
+ * Загрузка через {@link #store} сначала занимает ключ отдельной короткой транзакцией
+ * и только потом полагается на уже лежащий в MinIO объект. Занятый ключ - это лишняя ссылка,
+ * которую вызывающий обязан вернуть через {@link #releaseClaims} или
+ * {@link #releaseClaimAfterCompletion}, когда товары записаны или запись не удалась.
+ * Изменение счетчика и удаление объекта берут advisory-блокировку по ключу, поэтому
+ * объект не удаляется между проверкой ссылок и повторным использованием.
+ */
+@Slf4j
+@Service
+public class ImageRefService {
+    private static final String ADJUST = """
+        insert into image_objects (object_key, ref_count) values (?, ?)
+        on conflict (object_key) do update set ref_count = image_objects.ref_count + excluded.ref_count
+        """;
+    /** Первый ключ advisory-блокировки, отделяет блокировки изображений от прочих */
+    private static final String LOCK = """
+        select pg_advisory_xact_lock(1229801287, hashtext(k)) from unnest(array[:keys]::text[]) as k
+        """;
+
+    private final MinIOService minIOService;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate ownTransaction;
+
+    public ImageRefService(MinIOService minIOService, JdbcTemplate jdbcTemplate,
+                           NamedParameterJdbcTemplate namedJdbcTemplate,
+                           PlatformTransactionManager transactionManager) {
+        this.minIOService = minIOService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.ownTransaction = new TransactionTemplate(transactionManager);
+        this.ownTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Загрузка изображения товара, см. {@link #store(InputStream, long, String, String)}
+     */
+    public String store(MultipartFile file) {
+        try (InputStream in = file.getInputStream()) {
+            return store(in, file.getSize(), file.getContentType(), MinIOService.extensionOf(file.getOriginalFilename()));
+        } catch (IOException e) {
+            log.error("Ошибка при чтении загружаемого файла: {}", e.getMessage());
+            throw new RuntimeException("Не удалось загрузить файл в MinIO", e);
+        }
+    }
+
+    /**
+     * Загружает поток в MinIO под именем по содержимому и возвращает имя объекта
+     * с занятой ссылкой. Ключ занимается до проверки, есть ли объект в MinIO;
+     * если загрузка не удалась, ссылка возвращается.
+     */
+    public String store(InputStream stream, long size, String contentType, String extension) {
+        MinIOService.StagedObject staged = minIOService.stage(stream, size, contentType, extension);
+        String key = staged.getFileName();
+        try {
+            ownTransaction.executeWithoutResult(status -> {
+                lock(List.of(key));
+                jdbcTemplate.update(ADJUST, key, 1);
+            });
+        } catch (RuntimeException e) {
+            minIOService.discard(staged);
+            throw e;
+        }
+        try {
+            minIOService.publish(staged);
+        } catch (RuntimeException e) {
+            release(List.of(key));
+            throw e;
+        }
+        return key;
+    }
+
+    /**
+     * Возвращает ссылки, занятые {@link #store}, отдельной транзакцией.
+     * URL не из MinIO пропускаются.
+     */
+    public void releaseClaims(Collection<String> urls) {
+        List<String> keys = new ArrayList<>();
+        for (String url : urls) {
+            String key = minIOService.objectKeyOf(url);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        release(keys);
+    }
+
+    /**
+     * Возвращает ссылку, занятую {@link #store}, после завершения текущей транзакции:
+     * при коммите у объекта остается ссылка товара, при откате он удаляется.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void releaseClaimAfterCompletion(String url) {
+        String key = minIOService.objectKeyOf(url);
+        if (key == null) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    release(List.of(key));
+                } catch (Exception e) {
+                    log.warn("Не удалось вернуть ссылку на изображение '{}': {}", key, e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Есть ли у объекта ссылки товаров или незавершенных загрузок
+     */
+    public boolean isReferenced(String key) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+            "select exists (select 1 from image_objects where object_key = ?)", Boolean.class, key));
+    }
+
+    /**
+     * Добавляет в deltas изменение ссылок при замене изображения товара oldUrl на newUrl.
+     * URL не из MinIO не учитываются.
+     */
+    public void collect(String oldUrl, String newUrl, Map<String, Integer> deltas) {
+        String oldKey = minIOService.objectKeyOf(oldUrl);
+        String newKey = minIOService.objectKeyOf(newUrl);
+        if (Objects.equals(oldKey, newKey)) {
+            return;
+        }
+        if (oldKey != null) {
+            deltas.merge(oldKey, -1, Integer::sum);
+        }
+        if (newKey != null) {
+            deltas.merge(newKey, 1, Integer::sum);
+        }
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void replaced(String oldUrl, String newUrl) {
+        Map<String, Integer> deltas = new TreeMap<>();
+        collect(oldUrl, newUrl, deltas);
+        adjustAll(deltas);
+    }
+
+    /**
+     * Применяет изменения одним пакетом. Ключи упорядочены, чтобы параллельные
+     * транзакции блокировали их в одном порядке.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void adjustAll(Map<String, Integer> deltas) {
+        List<Object[]> rows = new ArrayList<>();
+        Set<String> released = new HashSet<>();
+        new TreeMap<>(deltas).forEach((key, delta) -> {
+            if (delta != 0) {
+                rows.add(new Object[]{key, delta});
+            }
+            if (delta < 0) {
+                released.add(key);
+            }
+        });
+        if (rows.isEmpty()) {
+            return;
+        }
+        lock(rows.stream().map(row -> (String) row[0]).toList());
+        jdbcTemplate.batchUpdate(ADJUST, rows);
+        if (released.isEmpty()) {
+            return;
+        }
+        List<String> unreferenced = namedJdbcTemplate.queryForList(
+            "delete from image_objects where object_key in (:keys) and ref_count <= 0 returning object_key",
+            Map.of("keys", released), String.class);
+        if (!unreferenced.isEmpty()) {
+            removeAfterCommit(unreferenced);
+        }
+    }
+
+    private void release(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> deltas = new TreeMap<>();
+        keys.forEach(key -> deltas.merge(key, -1, Integer::sum));
+        ownTransaction.executeWithoutResult(status -> adjustAll(deltas));
+    }
+
+    /**
+     * Блокировки по ключам до конца транзакции; ключи должны быть упорядочены
+     */
+    private void lock(List<String> keys) {
+        namedJdbcTemplate.query(LOCK, Map.of("keys", keys), rs -> { });
+    }
+
+    /**
+     * После коммита ключ проверяется еще раз под блокировкой: его могли снова занять,
+     * пока объект ждал удаления
+     */
+    private void removeAfterCommit(List<String> keys) {
+        List<String> ordered = List.copyOf(new TreeSet<>(keys));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                ownTransaction.executeWithoutResult(status -> {
+                    lock(ordered);
+                    Set<String> reacquired = new HashSet<>(namedJdbcTemplate.queryForList(
+                        "select object_key from image_objects where object_key in (:keys)",
+                        Map.of("keys", ordered), String.class));
+                    for (String key : ordered) {
+                        if (reacquired.contains(key)) {
+                            continue;
+                        }
+                        try {
+                            minIOService.deleteFile(key);
+                        } catch (Exception e) {
+                            log.warn("Не удалось удалить изображение '{}' из MinIO: {}", key, e.getMessage());
+                        }
+                    }
+                });
+            }
+        });
+    }
+}
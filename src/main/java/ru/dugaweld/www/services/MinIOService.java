@@ -7,13 +7,26 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Locale;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Service
 public class MinIOService {
     
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    /** Файлы до этого размера хешируются до загрузки, чтобы пропустить putObject для дубликатов */
+    private static final long IN_MEMORY_HASH_LIMIT = 4 * 1024 * 1024;
+    private static final String TEMPORARY_PREFIX = "tmp-";
+    /** Имя объекта по содержимому: SHA-256 в hex и расширение, см. {@link #stage} */
+    private static final Pattern CONTENT_KEY = Pattern.compile("[0-9a-f]{64}(\\.[^/]*)?");
+
     private final MinioClient minioClient;
     private final String bucketName;
     
@@ -60,30 +73,145 @@ public class MinIOService {
     }
     
     /**
-     * Загрузка файла в MinIO
+     * Загрузка произвольного файла под случайным именем. Такие объекты не делятся
+     * с изображениями товаров и не учитываются в image_objects, см. {@link ImageRefService}.
      */
     public String uploadFile(MultipartFile file) {
-        try {
-            String fileName = generateFileName(file.getOriginalFilename());
-            
-            minioClient.putObject(
-                    PutObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(fileName)
-                            .stream(file.getInputStream(), file.getSize(), -1)
-                            .contentType(file.getContentType())
-                            .build()
-            );
-            
+        String fileName = UUID.randomUUID() + extensionOf(file.getOriginalFilename());
+        try (InputStream in = file.getInputStream()) {
+            String type = file.getContentType() != null ? file.getContentType() : DEFAULT_CONTENT_TYPE;
+            put(fileName, in, file.getSize(), type);
             log.info("Файл '{}' успешно загружен в MinIO", fileName);
             return fileName;
-            
         } catch (Exception e) {
             log.error("Ошибка при загрузке файла в MinIO: {}", e.getMessage());
             throw new RuntimeException("Не удалось загрузить файл в MinIO", e);
         }
     }
-    
+
+    /**
+     * Первый шаг загрузки: вычисляет имя объекта по содержимому, но под этим именем еще
+     * ничего не кладет. Небольшой файл хешируется в памяти, большой или неизвестной длины
+     * загружается во временный объект. Дальше вызывается {@link #publish} или {@link #discard};
+     * такие объекты общие у товаров, поэтому загружать их нужно через {@link ImageRefService#store}.
+     */
+    public StagedObject stage(InputStream stream, long size, String contentType, String extension) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            DigestInputStream hashing = new DigestInputStream(stream, digest);
+            String type = contentType != null ? contentType : DEFAULT_CONTENT_TYPE;
+
+            if (size >= 0 && size <= IN_MEMORY_HASH_LIMIT) {
+                byte[] content = hashing.readAllBytes();
+                return new StagedObject(HexFormat.of().formatHex(digest.digest()) + extension, type, content, null);
+            }
+
+            String temporary = TEMPORARY_PREFIX + UUID.randomUUID();
+            put(temporary, hashing, size, type);
+            return new StagedObject(HexFormat.of().formatHex(digest.digest()) + extension, type, null, temporary);
+
+        } catch (Exception e) {
+            log.error("Ошибка при загрузке потока в MinIO: {}", e.getMessage());
+            throw new RuntimeException("Не удалось загрузить файл в MinIO", e);
+        }
+    }
+
+    /**
+     * Кладет подготовленный файл под его именем; если объект уже есть, загрузка пропускается.
+     * Временный объект удаляется в любом случае.
+     */
+    public void publish(StagedObject staged) {
+        String fileName = staged.getFileName();
+        try {
+            if (fileExists(fileName)) {
+                log.debug("Файл '{}' уже есть в MinIO, загрузка пропущена", fileName);
+            } else if (staged.content != null) {
+                put(fileName, new ByteArrayInputStream(staged.content), staged.content.length, staged.contentType);
+                log.info("Файл '{}' успешно загружен в MinIO", fileName);
+            } else {
+                minioClient.copyObject(
+                        CopyObjectArgs.builder()
+                                .bucket(bucketName)
+                                .object(fileName)
+                                .source(CopySource.builder().bucket(bucketName).object(staged.temporary).build())
+                                .build()
+                );
+                log.info("Файл '{}' успешно загружен в MinIO", fileName);
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при загрузке файла '{}' в MinIO: {}", fileName, e.getMessage());
+            throw new RuntimeException("Не удалось загрузить файл в MinIO", e);
+        } finally {
+            discard(staged);
+        }
+    }
+
+    /**
+     * Отказ от подготовленного файла: удаляет временный объект, если он был
+     */
+    public void discard(StagedObject staged) {
+        if (staged.temporary == null) {
+            return;
+        }
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder().bucket(bucketName).object(staged.temporary).build());
+        } catch (Exception e) {
+            log.warn("Не удалось удалить временный объект '{}' из MinIO: {}", staged.temporary, e.getMessage());
+        }
+    }
+
+    /**
+     * Файл, для которого уже известно имя по содержимому, см. {@link #stage}.
+     * Содержимое лежит либо в памяти, либо во временном объекте.
+     */
+    public static final class StagedObject {
+        private final String fileName;
+        private final String contentType;
+        private final byte[] content;
+        private final String temporary;
+
+        private StagedObject(String fileName, String contentType, byte[] content, String temporary) {
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.content = content;
+            this.temporary = temporary;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+    }
+
+    /**
+     * Имя объекта по содержимому из URL этого bucket'а; null для чужих URL
+     * и для файлов со случайным именем из {@link #uploadFile}
+     */
+    public String objectKeyOf(String url) {
+        if (url == null) {
+            return null;
+        }
+        String marker = "/" + bucketName + "/";
+        int start = url.indexOf(marker);
+        if (start < 0) {
+            return null;
+        }
+        start += marker.length();
+        int end = url.indexOf('?', start);
+        String key = end < 0 ? url.substring(start) : url.substring(start, end);
+        return CONTENT_KEY.matcher(key).matches() ? key : null;
+    }
+
+    private void put(String fileName, InputStream stream, long size, String contentType) throws Exception {
+        minioClient.putObject(
+                PutObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(fileName)
+                        .stream(stream, size, size >= 0 ? -1 : ObjectWriteArgs.MIN_MULTIPART_SIZE)
+                        .contentType(contentType)
+                        .build()
+        );
+    }
+
     /**
      * Получение файла из MinIO
      */
@@ -138,15 +266,11 @@ public class MinIOService {
         }
     }
     
-    /**
-     * Генерация уникального имени файла
-     */
-    private String generateFileName(String originalFileName) {
-        String extension = "";
+    static String extensionOf(String originalFileName) {
         if (originalFileName != null && originalFileName.contains(".")) {
-            extension = originalFileName.substring(originalFileName.lastIndexOf("."));
+            return originalFileName.substring(originalFileName.lastIndexOf(".")).toLowerCase(Locale.ROOT);
         }
-        return UUID.randomUUID() + extension;
+        return "";
     }
     
     /**
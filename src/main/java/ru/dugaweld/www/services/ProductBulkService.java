@@ -0,0 +1,289 @@
+package ru.dugaweld.www.services;
+
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.dugaweld.www.dto.ProductBulkFilterDto;
+import ru.dugaweld.www.dto.ProductBulkResultDto;
+import ru.dugaweld.www.dto.ProductBulkUpdateResultDto;
+import ru.dugaweld.www.dto.ProductDto;
+import ru.dugaweld.www.dto.ProductFilter;
+import ru.dugaweld.www.dto.ProductMoveDto;
+import ru.dugaweld.www.dto.ProductPriceChangeDto;
+import ru.dugaweld.www.events.CatalogChangedEvent;
+import ru.dugaweld.www.models.Category;
+import ru.dugaweld.www.models.Product;
+import ru.dugaweld.www.repositories.ProductRepository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Массовая запись товаров. Строки пишутся порциями по catalog.bulk.chunk-size:
+ * порция уходит в базу JDBC-пакетами, после чего контекст персистентности очищается.
+ * Изменения цены и перенос по отбору выполняются одним UPDATE без загрузки сущностей.
+ * Вся операция - одна транзакция, статистика категорий и кеши обновляются один раз в конце.
+ */
+@Slf4j
+@Service
+@Transactional
+public class ProductBulkService {
+    private final ProductRepository productRepository;
+    private final ProductService productService;
+    private final CategoryTreeCache categoryTreeCache;
+    private final CategoryStatsService categoryStatsService;
+    private final ImageRefService imageRefService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityManager entityManager;
+
+    @Value("${catalog.bulk.chunk-size}")
+    private int chunkSize;
+
+    public ProductBulkService(ProductRepository productRepository,
+                              ProductService productService,
+                              CategoryTreeCache categoryTreeCache,
+                              CategoryStatsService categoryStatsService,
+                              ImageRefService imageRefService,
+                              ApplicationEventPublisher eventPublisher,
+                              EntityManager entityManager) {
+        this.productRepository = productRepository;
+        this.productService = productService;
+        this.categoryTreeCache = categoryTreeCache;
+        this.categoryStatsService = categoryStatsService;
+        this.imageRefService = imageRefService;
+        this.eventPublisher = eventPublisher;
+        this.entityManager = entityManager;
+    }
+
+    public ProductBulkResultDto createAll(List<ProductDto> products) {
+        return createAll(products, true);
+    }
+
+    /**
+     * publishChange = false - событие изменения каталога не публикуется: вызывающий пишет
+     * серию порций (импорт CSV) и после последней сам вызывает {@link #productsChanged()},
+     * чтобы кеши, индекс подсказок и снимок перестраивались один раз, а не на каждую порцию.
+     */
+    public ProductBulkResultDto createAll(List<ProductDto> products, boolean publishChange) {
+        validate(products);
+        long started = System.nanoTime();
+
+        List<Long> ids = new ArrayList<>(products.size());
+        Map<Long, Long> deltas = new HashMap<>();
+        Map<String, Integer> imageDeltas = new HashMap<>();
+        for (int from = 0; from < products.size(); from += chunkSize) {
+            List<Product> chunk = new ArrayList<>();
+            for (ProductDto dto : products.subList(from, Math.min(from + chunkSize, products.size()))) {
+                Product product = new Product();
+                apply(dto, product);
+                entityManager.persist(product);
+                chunk.add(product);
+                deltas.merge(dto.getCategoryId(), 1L, Long::sum);
+                imageRefService.collect(null, dto.getImageUrl(), imageDeltas);
+            }
+            flushChunk();
+            chunk.forEach(product -> ids.add(product.getId()));
+        }
+
+        imageRefService.adjustAll(imageDeltas);
+        categoryStatsService.adjustAll(deltas);
+        if (publishChange) {
+            productsChanged();
+        }
+        log.info("Создано товаров: {} за {} мс", ids.size(), (System.nanoTime() - started) / 1_000_000);
+        return new ProductBulkResultDto(ids.size(), ids);
+    }
+
+    /**
+     * Полная перезапись полей, как в PUT /products/{id}. Если хотя бы одного товара нет,
+     * ничего не изменяется.
+     */
+    public ProductBulkResultDto updateAll(List<ProductDto> products) {
+        validate(products);
+        Set<Long> ids = new LinkedHashSet<>();
+        for (int i = 0; i < products.size(); i++) {
+            Long id = products.get(i).getId();
+            if (id == null) {
+                throw new IllegalArgumentException("Строка " + (i + 1) + ": не указан id товара");
+            }
+            if (!ids.add(id)) {
+                throw new IllegalArgumentException("Строка " + (i + 1) + ": товар " + id + " указан повторно");
+            }
+        }
+        long started = System.nanoTime();
+
+        Map<Long, Long> deltas = new HashMap<>();
+        Map<String, Integer> imageDeltas = new HashMap<>();
+        for (int from = 0; from < products.size(); from += chunkSize) {
+            List<ProductDto> chunk = products.subList(from, Math.min(from + chunkSize, products.size()));
+            Map<Long, Product> existing = productRepository.findAllById(chunk.stream().map(ProductDto::getId).toList())
+                .stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+            List<Long> missing = chunk.stream().map(ProductDto::getId).filter(id -> !existing.containsKey(id)).toList();
+            if (!missing.isEmpty()) {
+                throw new IllegalArgumentException("Товары не найдены: " + missing);
+            }
+
+            for (ProductDto dto : chunk) {
+                Product product = existing.get(dto.getId());
+                Long oldCategoryId = product.getCategory() != null ? product.getCategory().getId() : null;
+                BigDecimal oldPrice = product.getPrice();
+                imageRefService.collect(product.getImageUrl(), dto.getImageUrl(), imageDeltas);
+                apply(dto, product);
+                if (!Objects.equals(oldCategoryId, dto.getCategoryId())) {
+                    if (oldCategoryId != null) {
+                        deltas.merge(oldCategoryId, -1L, Long::sum);
+                    }
+                    deltas.merge(dto.getCategoryId(), 1L, Long::sum);
+                } else if (oldPrice.compareTo(dto.getPrice()) != 0) {
+                    deltas.merge(dto.getCategoryId(), 0L, Long::sum);
+                }
+            }
+            flushChunk();
+        }
+
+        imageRefService.adjustAll(imageDeltas);
+        finish(deltas);
+        log.info("Обновлено товаров: {} за {} мс", ids.size(), (System.nanoTime() - started) / 1_000_000);
+        return new ProductBulkResultDto(ids.size(), List.copyOf(ids));
+    }
+
+    /**
+     * Изменение цены всех товаров, попавших в отбор, одним запросом
+     */
+    public ProductBulkUpdateResultDto adjustPrices(ProductPriceChangeDto request) {
+        if ((request.getPercent() == null) == (request.getAmount() == null)) {
+            throw new IllegalArgumentException("Укажите либо процент, либо сумму изменения цены");
+        }
+        if (request.getPercent() != null && request.getPercent().compareTo(BigDecimal.valueOf(-100)) < 0) {
+            throw new IllegalArgumentException("Цену нельзя уменьшить больше чем на 100%");
+        }
+        ProductBulkFilterDto filter = requireFilter(request.getFilter());
+        Map<Long, Long> counts = productRepository.adjustPrices(toFilter(filter), ids(filter),
+            request.getPercent(), request.getAmount());
+
+        // Число товаров не изменилось, пересчитываются только min/max цены
+        Map<Long, Long> deltas = new HashMap<>();
+        counts.keySet().forEach(categoryId -> deltas.put(categoryId, 0L));
+        return finishUpdate(counts, deltas, "Цены изменены");
+    }
+
+    /**
+     * Перенос всех товаров, попавших в отбор, в другую категорию одним запросом
+     */
+    public ProductBulkUpdateResultDto moveToCategory(ProductMoveDto request) {
+        if (categoryTreeCache.current().get(request.getTargetCategoryId()) == null) {
+            throw new IllegalArgumentException("Категория " + request.getTargetCategoryId() + " не найдена");
+        }
+        ProductBulkFilterDto filter = requireFilter(request.getFilter());
+        Map<Long, Long> counts = productRepository.moveToCategory(toFilter(filter), ids(filter),
+            request.getTargetCategoryId());
+
+        Map<Long, Long> deltas = new HashMap<>();
+        long moved = 0;
+        for (Map.Entry<Long, Long> entry : counts.entrySet()) {
+            if (entry.getKey() != null) {
+                deltas.put(entry.getKey(), -entry.getValue());
+            }
+            moved += entry.getValue();
+        }
+        deltas.merge(request.getTargetCategoryId(), moved, Long::sum);
+        return finishUpdate(counts, deltas, "Товары перенесены в категорию " + request.getTargetCategoryId());
+    }
+
+    private ProductBulkFilterDto requireFilter(ProductBulkFilterDto filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("Не задан отбор товаров");
+        }
+        if (filter.getIds() != null && filter.getIds().isEmpty()) {
+            throw new IllegalArgumentException("Пустой список id");
+        }
+        // В обычном фильтре пустой список категорий означает "все товары", здесь это почти всегда ошибка
+        if (filter.getCategoryIds() != null && filter.getCategoryIds().isEmpty()) {
+            throw new IllegalArgumentException("Пустой список категорий");
+        }
+        return filter;
+    }
+
+    private ProductFilter toFilter(ProductBulkFilterDto filter) {
+        return productService.filter(filter.getCategoryIds(), filter.isIncludeDescendants(),
+            filter.getMinPrice(), filter.getMaxPrice());
+    }
+
+    private static Collection<Long> ids(ProductBulkFilterDto filter) {
+        return filter.getIds() != null ? new LinkedHashSet<>(filter.getIds()) : null;
+    }
+
+    private ProductBulkUpdateResultDto finishUpdate(Map<Long, Long> counts, Map<Long, Long> deltas, String action) {
+        long affected = counts.values().stream().mapToLong(Long::longValue).sum();
+        if (affected > 0) {
+            finish(deltas);
+        }
+        // Товары без категории входят в affected, но не в разбивку: null не может быть ключом JSON
+        Map<Long, Long> byCategory = new HashMap<>(counts);
+        byCategory.remove(null);
+        log.info("{}: затронуто товаров {}", action, affected);
+        return new ProductBulkUpdateResultDto(affected, byCategory);
+    }
+
+    private void validate(List<ProductDto> products) {
+        if (products == null || products.isEmpty()) {
+            throw new IllegalArgumentException("Список товаров пуст");
+        }
+        CategoryTree tree = categoryTreeCache.current();
+        for (int i = 0; i < products.size(); i++) {
+            ProductDto dto = products.get(i);
+            String row = "Строка " + (i + 1) + ": ";
+            if (dto == null) {
+                throw new IllegalArgumentException(row + "пустой товар");
+            }
+            if (dto.getName() == null || dto.getName().isBlank()) {
+                throw new IllegalArgumentException(row + "не указано название");
+            }
+            if (dto.getPrice() == null || dto.getPrice().signum() < 0) {
+                throw new IllegalArgumentException(row + "некорректная цена");
+            }
+            if (tree.get(dto.getCategoryId()) == null) {
+                throw new IllegalArgumentException(row + "категория " + dto.getCategoryId() + " не найдена");
+            }
+        }
+    }
+
+    private void apply(ProductDto dto, Product entity) {
+        entity.setName(dto.getName());
+        entity.setDescription(dto.getDescription());
+        entity.setPrice(dto.getPrice());
+        entity.setImageUrl(dto.getImageUrl());
+        // Категория проверена по дереву, ссылка не читает строку из базы
+        entity.setCategory(entityManager.getReference(Category.class, dto.getCategoryId()));
+    }
+
+    private void flushChunk() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    /**
+     * Сообщает слушателям каталога, что могли измениться любые товары
+     */
+    public void productsChanged() {
+        eventPublisher.publishEvent(new CatalogChangedEvent(CatalogChangedEvent.EntityType.PRODUCT, null));
+    }
+
+    private void finish(Map<Long, Long> deltas) {
+        categoryStatsService.adjustAll(deltas);
+        productsChanged();
+    }
+}
@@ -0,0 +1,94 @@
+package ru.dugaweld.www.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.dugaweld.www.dto.ProductDto;
+import ru.dugaweld.www.events.CatalogChangedEvent;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Ограниченный по размеру кеш карточек товаров с вытеснением по TTL.
+ * Записи сбрасываются после коммита изменений; счетчики попаданий, промахов и вытеснений
+ * публикуются в Actuator как метрики cache.* с тегом cache=products.
+ */
+@Component
+public class ProductCache {
+    private final Cache<Long, ProductDto> cache;
+    /** Счетчик сбросов, см. getAll */
+    private final AtomicLong generation = new AtomicLong();
+
+    public ProductCache(@Value("${catalog.cache.products.max-size}") long maxSize,
+                        @Value("${catalog.cache.products.ttl}") Duration ttl,
+                        MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "products");
+    }
+
+    /**
+     * Товар из кеша или из loader; отсутствующие товары не кешируются.
+     */
+    public ProductDto get(Long id, Function<Long, Optional<ProductDto>> loader) {
+        return cache.get(id, key -> loader.apply(key).orElse(null));
+    }
+
+    /**
+     * Несколько товаров сразу: промахи догружаются одним вызовом loader.
+     * В результат попадают только найденные товары. В отличие от get, загрузка не атомарна
+     * по ключам, поэтому результат кладется в кеш, только если за время загрузки не было
+     * сброса; сброс между проверкой и записью ловится повторной проверкой после записи.
+     */
+    public Map<Long, ProductDto> getAll(Collection<Long> ids, Function<Set<Long>, Map<Long, ProductDto>> loader) {
+        Map<Long, ProductDto> result = new HashMap<>(cache.getAllPresent(ids));
+        Set<Long> missing = new HashSet<>(ids);
+        missing.removeAll(result.keySet());
+        if (missing.isEmpty()) {
+            return result;
+        }
+        long before = generation.get();
+        Map<Long, ProductDto> loaded = loader.apply(Set.copyOf(missing));
+        result.putAll(loaded);
+        if (generation.get() == before) {
+            cache.putAll(loaded);
+            if (generation.get() != before) {
+                cache.invalidateAll(loaded.keySet());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Выполняется до увеличения версии каталога, чтобы новый ETag не выдавался со старой карточкой.
+     */
+    @Order(20)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        // Поколение увеличивается до сброса: идущая пакетная загрузка увидит его и не закеширует старое
+        generation.incrementAndGet();
+        if (event.getEntityType() == CatalogChangedEvent.EntityType.PRODUCT && event.getEntityId() != null) {
+            cache.invalidate(event.getEntityId());
+        } else {
+            // Удаление категории обнуляет category_id у товаров - проще сбросить всё.
+            // То же при изменении неизвестного набора товаров
+            cache.invalidateAll();
+        }
+    }
+}
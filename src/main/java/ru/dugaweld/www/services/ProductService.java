@@ -1,22 +1,54 @@
 package ru.dugaweld.www.services;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import ru.dugaweld.www.dto.CategoryDto;
+import ru.dugaweld.www.dto.CategoryPathItemDto;
+import ru.dugaweld.www.dto.ProductBatchDto;
+import ru.dugaweld.www.dto.ProductCursor;
+import ru.dugaweld.www.dto.ProductDetailDto;
 import ru.dugaweld.www.dto.ProductDto;
+import ru.dugaweld.www.dto.ProductFacetsDto;
+import ru.dugaweld.www.dto.ProductFilter;
+import ru.dugaweld.www.dto.ProductPageDto;
+import ru.dugaweld.www.dto.ProductPatchDto;
+import ru.dugaweld.www.dto.ProductSearchHit;
+import ru.dugaweld.www.dto.ProductSearchPageDto;
+import ru.dugaweld.www.dto.ProductSort;
+import ru.dugaweld.www.dto.RootCategoryPageDto;
+import ru.dugaweld.www.events.CatalogChangedEvent;
 import ru.dugaweld.www.models.Category;
 import ru.dugaweld.www.models.Product;
 import ru.dugaweld.www.repositories.CategoryRepository;
 import ru.dugaweld.www.repositories.ProductRepository;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -25,6 +57,12 @@ public class ProductService {
     private final ProductRepository productRepository;
     private final CategoryRepository categoryRepository;
     private final MinIOService minIOService;
+    private final CategoryTreeCache categoryTreeCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final ProductCache productCache;
+    private final CategoryStatsService categoryStatsService;
+    private final ImageRefService imageRefService;
     
     @Value("${saveImagesPath}")
     private String saveImagesPath;
@@ -32,53 +70,341 @@ public class ProductService {
     private String getImagesPath;
     @Value("${minio.endpoint}")
     private String minioEndpoint;
+    @Value("${catalog.page.default-size}")
+    private int defaultPageSize;
+    @Value("${catalog.page.max-size}")
+    private int maxPageSize;
+    @Value("${catalog.search.max-page}")
+    private int searchMaxPage;
+    @Value("${catalog.batch.max-ids}")
+    private int batchMaxIds;
+    @Value("${catalog.export.fetch-size}")
+    private int exportFetchSize;
+    private List<BigDecimal> priceBuckets;
 
     public ProductService(ProductRepository productRepository, 
                          CategoryRepository categoryRepository,
-                         MinIOService minIOService) {
+                         MinIOService minIOService,
+                         CategoryTreeCache categoryTreeCache,
+                         ApplicationEventPublisher eventPublisher,
+                         ObjectMapper objectMapper,
+                         ProductCache productCache,
+                         CategoryStatsService categoryStatsService,
+                         ImageRefService imageRefService) {
         this.productRepository = productRepository;
         this.categoryRepository = categoryRepository;
         this.minIOService = minIOService;
+        this.categoryTreeCache = categoryTreeCache;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.productCache = productCache;
+        this.categoryStatsService = categoryStatsService;
+        this.imageRefService = imageRefService;
     }
 
+    @Value("${catalog.facets.price-buckets}")
+    void setPriceBuckets(String bounds) {
+        this.priceBuckets = Arrays.stream(bounds.split(","))
+            .map(String::trim)
+            .filter(value -> !value.isEmpty())
+            .map(BigDecimal::new)
+            .sorted()
+            .toList();
+    }
+
+    @Transactional(readOnly = true)
     public List<ProductDto> findAll() {
-        return productRepository.findAll().stream().map(this::toDto).collect(Collectors.toList());
+        return productRepository.findAllDto();
     }
 
+    @Transactional(readOnly = true)
     public List<ProductDto> findByCategory(Long categoryId) {
-        return productRepository.findByCategoryId(categoryId).stream().map(this::toDto).collect(Collectors.toList());
+        return productRepository.findDtoByCategoryId(categoryId);
+    }
+
+    /**
+     * Товары категории вместе со всеми подкатегориями. Поддерево берется из снимка
+     * дерева категорий, поэтому к базе уходит один запрос.
+     */
+    @Transactional(readOnly = true)
+    public List<ProductDto> findByCategoryWithDescendants(Long categoryId) {
+        return productRepository.findDtoByCategoryIdIn(categoryTreeCache.current().subtreeIds(categoryId));
+    }
+
+    /**
+     * Попадание в кеш не открывает транзакцию и не берет соединение из пула.
+     * Промах читается с основной базы: с реплики в кеш могла бы попасть устаревшая карточка.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public ProductDto findById(Long id) { return productCache.get(id, productRepository::findDtoById); }
+
+    /**
+     * Карточка товара с цепочкой категорий из снимка дерева - без дополнительных запросов.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public ProductDetailDto findDetailById(Long id) {
+        ProductDto product = findById(id);
+        if (product == null) {
+            return null;
+        }
+        List<CategoryPathItemDto> path = categoryTreeCache.current().path(product.getCategoryId()).stream()
+            .map(CategoryTree.Node::toPathItem)
+            .toList();
+        return new ProductDetailDto(product, path);
+    }
+
+    /**
+     * Пакетное получение товаров: закешированные берутся из памяти, остальные - одним запросом.
+     * Порядок ответа совпадает с порядком запроса, повторы убираются.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public ProductBatchDto findByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ProductBatchDto(List.of(), List.of());
+        }
+        Set<Long> unique = new LinkedHashSet<>(ids);
+        unique.remove(null);
+        if (unique.size() > batchMaxIds) {
+            throw new IllegalArgumentException("Слишком много id в запросе, максимум " + batchMaxIds);
+        }
+
+        Map<Long, ProductDto> found = productCache.getAll(unique, missing -> productRepository.findDtoByIdIn(missing)
+            .stream()
+            .collect(Collectors.toMap(ProductDto::getId, Function.identity())));
+
+        List<ProductDto> items = new ArrayList<>(found.size());
+        List<Long> absent = new ArrayList<>();
+        for (Long id : unique) {
+            ProductDto product = found.get(id);
+            if (product != null) {
+                items.add(product);
+            } else {
+                absent.add(id);
+            }
+        }
+        return new ProductBatchDto(items, absent);
+    }
+
+    /**
+     * Keyset-пагинация: читается не больше size + 1 строк независимо от размера таблицы.
+     * Если сортировка не указана, она берется из курсора.
+     */
+    @Transactional(readOnly = true)
+    public ProductPageDto findPage(ProductFilter filter, String sortParam, String cursorToken, Integer size,
+                                   boolean withFacets) {
+        ProductCursor cursor = cursorToken != null && !cursorToken.isBlank() ? ProductCursor.decode(cursorToken) : null;
+        ProductSort sort = sortParam == null && cursor != null ? cursor.getSort() : ProductSort.fromParam(sortParam);
+        if (cursor != null && cursor.getSort() != sort) {
+            throw new IllegalArgumentException("Курсор получен для другой сортировки");
+        }
+
+        int pageSize = resolvePageSize(size);
+        List<ProductDto> rows = productRepository.findPage(filter, sort, cursor, pageSize + 1);
+        boolean hasNext = rows.size() > pageSize;
+        List<ProductDto> items = hasNext ? rows.subList(0, pageSize) : rows;
+        String next = hasNext ? ProductCursor.after(sort, items.get(items.size() - 1)).encode() : null;
+        ProductFacetsDto facets = withFacets ? productRepository.findFacets(filter, priceBuckets) : null;
+        return new ProductPageDto(items, next, facets);
+    }
+
+    /**
+     * Выгрузка всего каталога в поток: JSON-массив или NDJSON (объект на строку).
+     * Строки читаются из базы порциями по fetch size и сразу пишутся в out,
+     * поэтому память не зависит от размера каталога.
+     */
+    @Transactional(readOnly = true)
+    public long export(OutputStream out, boolean ndjson) throws IOException {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long count = 0;
+        try (Stream<ProductDto> products = productRepository.streamAll(exportFetchSize);
+             SequenceWriter sequence = ndjson
+                 ? writer.withRootValueSeparator("\n").writeValues(out)
+                 : writer.writeValuesAsArray(out)) {
+            for (ProductDto product : (Iterable<ProductDto>) products::iterator) {
+                sequence.write(product);
+                count++;
+            }
+            if (ndjson && count > 0) {
+                out.write('\n');
+            }
+        }
+        log.info("Выгружено товаров: {}", count);
+        return count;
+    }
+
+    /**
+     * Первая страница товаров (с подкатегориями) для каждой корневой категории.
+     */
+    @Transactional(readOnly = true)
+    public List<RootCategoryPageDto> findRootCategoryPages() {
+        List<RootCategoryPageDto> pages = new ArrayList<>();
+        for (CategoryTree.Node root : categoryTreeCache.current().roots()) {
+            ProductPageDto page = findPage(filter(List.of(root.getId()), true, null, null), null, null, null, false);
+            CategoryDto category = root.toDto();
+            categoryStatsService.applyTo(category);
+            pages.add(new RootCategoryPageDto(category, page.getItems(), page.getNext()));
+        }
+        return pages;
+    }
+
+    /**
+     * Собирает фильтр выдачи. Категории при includeDescendants раскрываются в поддеревья
+     * по снимку дерева категорий; пустой список категорий означает "без фильтра".
+     */
+    public ProductFilter filter(Collection<Long> categoryIds, boolean includeDescendants,
+                                BigDecimal minPrice, BigDecimal maxPrice) {
+        return filter(categoryIds, includeDescendants, minPrice, maxPrice, null);
     }
 
-    public ProductDto findById(Long id) { return productRepository.findById(id).map(this::toDto).orElse(null); }
+    /**
+     * То же с полнотекстовым запросом query; пустой запрос не сужает выдачу.
+     */
+    public ProductFilter filter(Collection<Long> categoryIds, boolean includeDescendants,
+                                BigDecimal minPrice, BigDecimal maxPrice, String query) {
+        if (minPrice != null && maxPrice != null && minPrice.compareTo(maxPrice) > 0) {
+            throw new IllegalArgumentException("Минимальная цена больше максимальной");
+        }
+        Collection<Long> resolved = null;
+        if (categoryIds != null && !categoryIds.isEmpty()) {
+            if (includeDescendants) {
+                CategoryTree tree = categoryTreeCache.current();
+                Set<Long> subtree = new LinkedHashSet<>();
+                categoryIds.forEach(id -> subtree.addAll(tree.subtreeIds(id)));
+                resolved = subtree;
+            } else {
+                resolved = new LinkedHashSet<>(categoryIds);
+            }
+        }
+        return new ProductFilter(resolved, minPrice, maxPrice, query == null || query.isBlank() ? null : query.trim());
+    }
+
+    /**
+     * Полнотекстовый поиск с ранжированием. Количество совпадений не считается:
+     * выбирается size + 1 строк, чтобы понять, есть ли следующая страница.
+     */
+    @Transactional(readOnly = true)
+    public ProductSearchPageDto search(String query, Long categoryId, boolean includeDescendants, int page, Integer size) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Пустой поисковый запрос");
+        }
+        if (page < 0) {
+            throw new IllegalArgumentException("Номер страницы не может быть отрицательным");
+        }
+        if (page > searchMaxPage) {
+            throw new IllegalArgumentException("Номер страницы не может быть больше " + searchMaxPage);
+        }
+
+        int pageSize = resolvePageSize(size);
+        long offset = (long) page * pageSize;
+        List<ProductSearchHit> hits;
+        if (categoryId == null) {
+            hits = productRepository.search(query.trim(), pageSize + 1, offset);
+        } else {
+            Collection<Long> categoryIds = filter(List.of(categoryId), includeDescendants, null, null).getCategoryIds();
+            hits = productRepository.searchInCategories(query.trim(), categoryIds, pageSize + 1, offset);
+        }
+
+        boolean hasNext = hits.size() > pageSize;
+        List<ProductDto> items = hits.stream().limit(pageSize).map(ProductSearchHit::toDto).toList();
+        return new ProductSearchPageDto(items, page, pageSize, hasNext);
+    }
+
+    private int resolvePageSize(Integer size) {
+        if (size == null) {
+            return defaultPageSize;
+        }
+        if (size < 1) {
+            throw new IllegalArgumentException("Размер страницы должен быть положительным");
+        }
+        return Math.min(size, maxPageSize);
+    }
 
     public ProductDto create(ProductDto dto, MultipartFile image) {
         Product product = new Product();
         dto.setImageUrl(uploadImageToMinIO(image));
         apply(dto, product);
-        return toDto(productRepository.save(product));
+        Product saved = productRepository.save(product);
+        imageRefService.replaced(null, saved.getImageUrl());
+        categoryStatsService.productAdded(categoryIdOf(saved));
+        eventPublisher.publishEvent(CatalogChangedEvent.product(saved.getId()));
+        return toDto(saved);
     }
 
     public ProductDto update(Long id, ProductDto dto) {
         Product existing = productRepository.findById(id).orElseThrow();
+        Long oldCategoryId = categoryIdOf(existing);
+        BigDecimal oldPrice = existing.getPrice();
+        String oldImageUrl = existing.getImageUrl();
         apply(dto, existing);
-        return toDto(productRepository.save(existing));
+        Product saved = productRepository.save(existing);
+        imageRefService.replaced(oldImageUrl, saved.getImageUrl());
+        categoryStatsService.productChanged(oldCategoryId, categoryIdOf(saved),
+            oldPrice.compareTo(saved.getPrice()) != 0);
+        eventPublisher.publishEvent(CatalogChangedEvent.product(id));
+        return toDto(saved);
     }
 
     public void delete(Long id) {
         Product product = productRepository.findById(id).orElseThrow();
         
-        // Удаляем изображение из MinIO, если оно существует
-        if (product.getImageUrl() != null && !product.getImageUrl().isEmpty()) {
-            try {
-                String fileName = extractFileNameFromUrl(product.getImageUrl());
-                minIOService.deleteFile(fileName);
-                log.info("Изображение '{}' удалено из MinIO", fileName);
-            } catch (Exception e) {
-                log.warn("Не удалось удалить изображение из MinIO: {}", e.getMessage());
+        // Объект в MinIO удаляется после коммита, если на него больше никто не ссылается
+        imageRefService.replaced(product.getImageUrl(), null);
+        
+        Long categoryId = categoryIdOf(product);
+        productRepository.delete(product);
+        categoryStatsService.productRemoved(categoryId);
+        eventPublisher.publishEvent(CatalogChangedEvent.product(id));
+    }
+
+    /**
+     * Меняет только переданные поля. Версия должна совпадать с текущей, иначе
+     * ObjectOptimisticLockingFailureException; она же возникает при коммите,
+     * если товар успели изменить параллельно. Категория читается, только если она меняется.
+     */
+    public ProductDto patch(Long id, ProductPatchDto patch) {
+        if (patch.getVersion() == null) {
+            throw new IllegalArgumentException("Не указана версия товара");
+        }
+        Product existing = productRepository.findById(id).orElseThrow();
+        if (!patch.getVersion().equals(existing.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Product.class, id);
+        }
+
+        Long oldCategoryId = categoryIdOf(existing);
+        BigDecimal oldPrice = existing.getPrice();
+        String oldImageUrl = existing.getImageUrl();
+        if (patch.has("name")) {
+            if (patch.getName() == null || patch.getName().isBlank()) {
+                throw new IllegalArgumentException("Название не может быть пустым");
             }
+            existing.setName(patch.getName());
         }
-        
-        productRepository.deleteById(id);
+        if (patch.has("description")) {
+            existing.setDescription(patch.getDescription());
+        }
+        if (patch.has("price")) {
+            if (patch.getPrice() == null || patch.getPrice().signum() < 0) {
+                throw new IllegalArgumentException("Некорректная цена");
+            }
+            existing.setPrice(patch.getPrice());
+        }
+        if (patch.has("imageUrl")) {
+            existing.setImageUrl(patch.getImageUrl());
+        }
+        if (patch.has("categoryId") && !Objects.equals(patch.getCategoryId(), oldCategoryId)) {
+            if (categoryTreeCache.current().get(patch.getCategoryId()) == null) {
+                throw new IllegalArgumentException("Категория " + patch.getCategoryId() + " не найдена");
+            }
+            existing.setCategory(categoryRepository.getReferenceById(patch.getCategoryId()));
+        }
+
+        // flush увеличивает версию, клиент получает ее в ответе
+        Product saved = productRepository.saveAndFlush(existing);
+        imageRefService.replaced(oldImageUrl, saved.getImageUrl());
+        categoryStatsService.productChanged(oldCategoryId, categoryIdOf(saved),
+            oldPrice.compareTo(saved.getPrice()) != 0);
+        eventPublisher.publishEvent(CatalogChangedEvent.product(id));
+        return toDto(saved);
     }
 
     private void apply(ProductDto dto, Product entity) {
@@ -90,6 +416,10 @@ public class ProductService {
         entity.setCategory(category);
     }
 
+    private static Long categoryIdOf(Product product) {
+        return product.getCategory() != null ? product.getCategory().getId() : null;
+    }
+
     private ProductDto toDto(Product product) {
         ProductDto dto = new ProductDto();
         dto.setId(product.getId());
@@ -97,7 +427,8 @@ public class ProductService {
         dto.setDescription(product.getDescription());
         dto.setPrice(product.getPrice());
         dto.setImageUrl(product.getImageUrl());
-        dto.setCategoryId(product.getCategory() != null ? product.getCategory().getId() : null);
+        dto.setCategoryId(categoryIdOf(product));
+        dto.setVersion(product.getVersion());
         return dto;
     }
 
@@ -110,8 +441,9 @@ public class ProductService {
         }
         
         try {
-            String fileName = minIOService.uploadFile(image);
+            String fileName = imageRefService.store(image);
             String fileUrl = minIOService.getFileUrl(fileName);
+            imageRefService.releaseClaimAfterCompletion(fileUrl);
             log.info("Изображение загружено в MinIO: {}", fileName);
             return fileUrl;
         } catch (Exception e) {
@@ -120,20 +452,6 @@ public class ProductService {
         }
     }
     
-    /**
-     * Извлечение имени файла из URL
-     */
-    private String extractFileNameFromUrl(String url) {
-        if (url == null || url.isEmpty()) {
-            return null;
-        }
-        
-        // Извлекаем имя файла из URL
-        // Например: "http://localhost:9000/dugaweld-images/uuid.jpg" -> "uuid.jpg"
-        String[] parts = url.split("/");
-        return parts[parts.length - 1];
-    }
-    
     /**
      * Legacy метод для загрузки в файловую систему (для совместимости)
      */
@@ -0,0 +1,240 @@
+package ru.dugaweld.www.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.dugaweld.www.config.ReadWriteRoutingDataSource;
+import ru.dugaweld.www.dto.ProductNameView;
+import ru.dugaweld.www.dto.SuggestionDto;
+import ru.dugaweld.www.events.CatalogChangedEvent;
+import ru.dugaweld.www.repositories.ProductRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Префиксный индекс названий товаров и категорий для подсказок в строке поиска.
+ * Ключи - отдельные нормализованные слова названия, значение - название целиком,
+ * общее для всех слов, так что "мр-3" находит "Электроды МР-3", а память растет
+ * линейно с длиной названий. Запрос из нескольких слов ищется по первому слову
+ * и проверяется по полному названию. Индекс целиком в памяти и обновляется
+ * по одному товару после коммита изменений; запросы подсказок в базу не ходят.
+ * <p>
+ * Изменения выполняются под одной блокировкой; чтение идет без нее. Новые ключи
+ * товара добавляются раньше, чем удаляются устаревшие, поэтому при переименовании
+ * товар не пропадает из подсказок.
+ */
+@Slf4j
+@Component
+public class SuggestionIndex {
+    private static final char KEY_SEPARATOR = '\u0000';
+    // Сколько ключей просматривать на одну подсказку, чтобы частый префикс не вызывал обход всего диапазона
+    private static final int SCAN_FACTOR = 20;
+
+    private final ProductRepository productRepository;
+    private final CategoryTreeCache categoryTreeCache;
+
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    /** Ключи по владельцу; читаются и меняются только под updateLock */
+    private final Map<Long, Set<String>> productKeys = new HashMap<>();
+    private final Map<Long, Set<String>> categoryKeys = new HashMap<>();
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    @Value("${catalog.suggest.default-limit}")
+    private int defaultLimit;
+    @Value("${catalog.suggest.max-limit}")
+    private int maxLimit;
+
+    public SuggestionIndex(ProductRepository productRepository, CategoryTreeCache categoryTreeCache) {
+        this.productRepository = productRepository;
+        this.categoryTreeCache = categoryTreeCache;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void load() {
+        updateLock.lock();
+        try {
+            reloadProducts();
+            reloadCategories();
+            log.info("Индекс подсказок построен: товаров {}, ключей {}", productKeys.size(), entries.size());
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    /**
+     * Выполняется после перестроения дерева категорий (см. порядок слушателей).
+     */
+    @Order(10)
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        // Сразу после коммита реплика может еще не догнать основную базу
+        ReadWriteRoutingDataSource.onPrimary(() -> apply(event));
+    }
+
+    private void apply(CatalogChangedEvent event) {
+        // Чтение товара и запись в индекс под одной блокировкой: иначе параллельные
+        // события одного товара могут записать в индекс устаревшее название
+        updateLock.lock();
+        try {
+            if (event.getEntityType() == CatalogChangedEvent.EntityType.CATEGORY) {
+                reloadCategories();
+                return;
+            }
+            if (event.getEntityId() == null) {
+                reloadProducts();
+                return;
+            }
+            productRepository.findDtoById(event.getEntityId()).ifPresentOrElse(
+                product -> put(productKeys, "PRODUCT", product.getId(), product.getName()),
+                () -> remove(productKeys, event.getEntityId())
+            );
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    public List<SuggestionDto> suggest(String query, Integer limit) {
+        String prefix = normalize(query);
+        if (prefix.isEmpty()) {
+            return List.of();
+        }
+        int max = limit == null ? defaultLimit : Math.max(1, Math.min(limit, maxLimit));
+
+        // Диапазон выбирается по первому слову запроса; если слов несколько,
+        // первое должно совпасть со словом названия целиком
+        int space = prefix.indexOf(' ');
+        String from = space < 0 ? prefix : prefix.substring(0, space) + KEY_SEPARATOR;
+        String to = space < 0 ? prefix + Character.MAX_VALUE : prefix.substring(0, space) + (char) (KEY_SEPARATOR + 1);
+
+        // Совпадения с начала названия важнее совпадений с середины, категории - выше товаров
+        Map<String, SuggestionDto> categories = new LinkedHashMap<>();
+        Map<String, SuggestionDto> products = new LinkedHashMap<>();
+        Map<String, SuggestionDto> inner = new LinkedHashMap<>();
+        NavigableMap<String, Entry> range = entries.subMap(from, true, to, false);
+        int scanned = 0;
+        for (Entry entry : range.values()) {
+            boolean fromStart = entry.normalized.startsWith(prefix);
+            if (!fromStart && space >= 0 && !entry.normalized.contains(" " + prefix)) {
+                // Первое слово совпало, но остальные слова запроса идут не следом за ним
+                if (++scanned >= max * SCAN_FACTOR) {
+                    break;
+                }
+                continue;
+            }
+            String key = entry.type + ":" + entry.id;
+            SuggestionDto dto = new SuggestionDto(entry.type, entry.id, entry.text);
+            if (!fromStart) {
+                inner.putIfAbsent(key, dto);
+            } else if ("CATEGORY".equals(entry.type)) {
+                categories.putIfAbsent(key, dto);
+            } else {
+                products.putIfAbsent(key, dto);
+            }
+            if (categories.size() + products.size() >= max || ++scanned >= max * SCAN_FACTOR) {
+                break;
+            }
+        }
+
+        List<SuggestionDto> result = new ArrayList<>(max);
+        for (Map<String, SuggestionDto> group : List.of(categories, products, inner)) {
+            for (Map.Entry<String, SuggestionDto> e : group.entrySet()) {
+                if (result.size() >= max) {
+                    return result;
+                }
+                if (group == inner && (categories.containsKey(e.getKey()) || products.containsKey(e.getKey()))) {
+                    continue;
+                }
+                result.add(e.getValue());
+            }
+        }
+        return result;
+    }
+
+    private void reloadProducts() {
+        Set<Long> present = new HashSet<>();
+        for (ProductNameView product : productRepository.findAllNames()) {
+            put(productKeys, "PRODUCT", product.getId(), product.getName());
+            present.add(product.getId());
+        }
+        for (Long id : List.copyOf(productKeys.keySet())) {
+            if (!present.contains(id)) {
+                remove(productKeys, id);
+            }
+        }
+    }
+
+    private void reloadCategories() {
+        Set<Long> present = new HashSet<>();
+        for (CategoryTree.Node node : categoryTreeCache.current().all()) {
+            put(categoryKeys, "CATEGORY", node.getId(), node.getName());
+            present.add(node.getId());
+        }
+        for (Long id : List.copyOf(categoryKeys.keySet())) {
+            if (!present.contains(id)) {
+                remove(categoryKeys, id);
+            }
+        }
+    }
+
+    /**
+     * Один ключ на каждое различное слово названия; все ключи ссылаются на одну запись
+     */
+    private void put(Map<Long, Set<String>> owner, String type, Long id, String text) {
+        String normalized = normalize(text);
+        Entry entry = new Entry(type, id, text, normalized);
+        Set<String> keys = new LinkedHashSet<>();
+        for (String word : normalized.split(" ")) {
+            if (!word.isEmpty()) {
+                keys.add(word + KEY_SEPARATOR + type + KEY_SEPARATOR + id);
+            }
+        }
+        keys.forEach(key -> entries.put(key, entry));
+        Set<String> previous = owner.put(id, keys);
+        if (previous != null) {
+            for (String key : previous) {
+                if (!keys.contains(key)) {
+                    entries.remove(key);
+                }
+            }
+        }
+    }
+
+    private void remove(Map<Long, Set<String>> owner, Long id) {
+        Set<String> keys = owner.remove(id);
+        if (keys != null) {
+            keys.forEach(entries::remove);
+        }
+    }
+
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.toLowerCase(Locale.ROOT)
+            .replace('ё', 'е')
+            .replaceAll("\\s+", " ")
+            .trim();
+    }
+
+    private record Entry(String type, Long id, String text, String normalized) {
+    }
+}
@@ -0,0 +1,77 @@
+package ru.dugaweld.www.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Курсор keyset-пагинации: кодирование, разбор и отказ на испорченных строках
+ */
+class ProductCursorTest {
+    private static final ProductDto LAST = new ProductDto(42L, "Электрод | АНО-4", null,
+        new BigDecimal("1250.50"), null, 1L, 0L);
+
+    @Test
+    void idCursorRoundTrip() {
+        ProductCursor cursor = ProductCursor.decode(ProductCursor.after(ProductSort.ID, LAST).encode());
+
+        assertEquals(ProductSort.ID, cursor.getSort());
+        assertEquals(42L, cursor.getId());
+        assertNull(cursor.getValue());
+    }
+
+    @Test
+    void nameCursorKeepsSeparatorInName() {
+        ProductCursor cursor = ProductCursor.decode(ProductCursor.after(ProductSort.NAME, LAST).encode());
+
+        assertEquals(ProductSort.NAME, cursor.getSort());
+        assertEquals(42L, cursor.getId());
+        assertEquals("Электрод | АНО-4", cursor.getValue());
+    }
+
+    @Test
+    void priceCursorRoundTrip() {
+        for (ProductSort sort : new ProductSort[]{ProductSort.PRICE_ASC, ProductSort.PRICE_DESC}) {
+            ProductCursor cursor = ProductCursor.decode(ProductCursor.after(sort, LAST).encode());
+
+            assertEquals(sort, cursor.getSort());
+            assertEquals(42L, cursor.getId());
+            assertEquals(new BigDecimal("1250.50"), cursor.getPriceValue());
+        }
+    }
+
+    @Test
+    void encodedCursorIsUrlSafe() {
+        String token = ProductCursor.after(ProductSort.NAME, LAST).encode();
+
+        assertFalse(token.contains("+") || token.contains("/") || token.contains("="));
+    }
+
+    @Test
+    void invalidCursorsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ProductCursor.decode("не base64"));
+        assertThrows(IllegalArgumentException.class, () -> ProductCursor.decode(raw("UNKNOWN|1")));
+        assertThrows(IllegalArgumentException.class, () -> ProductCursor.decode(raw("ID|x")));
+        assertThrows(IllegalArgumentException.class, () -> ProductCursor.decode(raw("NAME|1")));
+        assertThrows(IllegalArgumentException.class, () -> ProductCursor.decode(raw("PRICE_ASC|1|abc")));
+    }
+
+    @Test
+    void sortFromParam() {
+        assertEquals(ProductSort.ID, ProductSort.fromParam(null));
+        assertEquals(ProductSort.ID, ProductSort.fromParam(" "));
+        assertEquals(ProductSort.PRICE_DESC, ProductSort.fromParam(" Price-Desc "));
+        assertThrows(IllegalArgumentException.class, () -> ProductSort.fromParam("price"));
+    }
+
+    private static String raw(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
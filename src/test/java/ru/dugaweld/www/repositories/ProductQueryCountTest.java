@@ -0,0 +1,95 @@
+package ru.dugaweld.www.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.annotation.Transactional;
+import ru.dugaweld.www.dto.ProductDto;
+import ru.dugaweld.www.dto.ProductFilter;
+import ru.dugaweld.www.dto.ProductPageDto;
+import ru.dugaweld.www.models.Category;
+import ru.dugaweld.www.models.Product;
+import ru.dugaweld.www.services.MinIOService;
+import ru.dugaweld.www.services.ProductService;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Выдача товаров читается проекцией в DTO одним запросом, без догрузки категорий по строкам.
+ * Нужна PostgreSQL со схемой Liquibase, поэтому тест запускается только при заданном DB_URL;
+ * данные теста откатываются.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@EnabledIfEnvironmentVariable(named = "DB_URL", matches = ".+")
+@Transactional
+class ProductQueryCountTest {
+    private static final int PRODUCTS = 30;
+
+    @MockBean
+    private MinIOService minIOService;
+
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        for (int c = 0; c < 3; c++) {
+            Category category = new Category();
+            category.setName("Категория теста " + c);
+            categoryRepository.save(category);
+            for (int i = 0; i < PRODUCTS / 3; i++) {
+                Product product = new Product();
+                product.setName("Товар теста " + c + "-" + i);
+                product.setPrice(BigDecimal.valueOf(100 + i));
+                product.setCategory(category);
+                productRepository.save(product);
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void productPageIsSingleStatement() {
+        ProductPageDto page = productService.findPage(new ProductFilter(null, null, null), null, null, 20, false);
+
+        assertEquals(20, page.getItems().size());
+        assertNotNull(page.getNext());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void productListIsSingleStatement() {
+        List<ProductDto> products = productService.findAll();
+
+        assertTrue(products.size() >= PRODUCTS);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+}
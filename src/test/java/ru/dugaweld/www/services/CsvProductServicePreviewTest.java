@@ -0,0 +1,88 @@
+package ru.dugaweld.www.services;
+
+import org.junit.jupiter.api.Test;
+import ru.dugaweld.www.dto.CsvPreviewDto;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Предпросмотр CSV: точное число строк для короткого файла и оценка по размеру для длинного
+ */
+class CsvProductServicePreviewTest {
+    private static final String HEADER = "name;description;price;categoryId;imageUrl\n";
+
+    private final CsvProductService service = new CsvProductService(null, null, null, null);
+
+    @Test
+    void emptyFileHasNoRows() throws IOException {
+        CsvPreviewDto preview = preview(new byte[0], 10);
+
+        assertEquals(0, preview.getCsvHeaders().length);
+        assertEquals(0, preview.getTotalRows());
+        assertFalse(preview.isTotalRowsEstimated());
+    }
+
+    @Test
+    void shortFileIsCountedExactly() throws IOException {
+        CsvPreviewDto preview = preview(csv(3, StandardCharsets.UTF_8), 10);
+
+        assertEquals(3, preview.getPreviewData().size());
+        assertEquals(3, preview.getTotalRows());
+        assertFalse(preview.isTotalRowsEstimated());
+        assertEquals("Товар 00001", preview.getPreviewData().get(0).getName());
+    }
+
+    @Test
+    void fileEndingRightAfterSampleIsCountedExactly() throws IOException {
+        CsvPreviewDto preview = preview(csv(5, StandardCharsets.UTF_8), 5);
+
+        assertEquals(5, preview.getTotalRows());
+        assertFalse(preview.isTotalRowsEstimated());
+    }
+
+    @Test
+    void longUtf8FileIsEstimated() throws IOException {
+        CsvPreviewDto preview = preview(csv(20_000, StandardCharsets.UTF_8), 10);
+
+        assertEquals(10, preview.getPreviewData().size());
+        assertTrue(preview.isTotalRowsEstimated());
+        assertEquals(20_000, preview.getTotalRows(), 20_000 * 0.05);
+    }
+
+    @Test
+    void longWindows1251FileIsEstimated() throws IOException {
+        CsvPreviewDto preview = preview(csv(20_000, Charset.forName("windows-1251")), 10);
+
+        assertTrue(preview.isTotalRowsEstimated());
+        assertEquals(20_000, preview.getTotalRows(), 20_000 * 0.05);
+    }
+
+    @Test
+    void estimateIsNeverBelowSeenRows() throws IOException {
+        // Размер файла занижен: оценка все равно больше показанных строк
+        byte[] bytes = csv(50, StandardCharsets.UTF_8);
+        CsvPreviewDto preview = service.preview(new ByteArrayInputStream(bytes), 10, 10);
+
+        assertTrue(preview.isTotalRowsEstimated());
+        assertEquals(11, preview.getTotalRows());
+    }
+
+    private CsvPreviewDto preview(byte[] bytes, int rows) throws IOException {
+        return service.preview(new ByteArrayInputStream(bytes), bytes.length, rows);
+    }
+
+    private static byte[] csv(int rows, Charset charset) {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 1; i <= rows; i++) {
+            csv.append(String.format("Товар %05d;Сварочный электрод;%05d.00;1;\n", i, i));
+        }
+        return csv.toString().getBytes(charset);
+    }
+}
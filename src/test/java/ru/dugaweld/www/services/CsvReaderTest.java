@@ -0,0 +1,141 @@
+package ru.dugaweld.www.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Разбор CSV: кавычки, переводы строк и определение кодировки
+ */
+class CsvReaderTest {
+
+    @Test
+    void quotedFieldsKeepDelimiterAndDoubledQuotes() throws IOException {
+        List<String[]> rows = read("a;\"b;c\";\"d\"\"e\"\n");
+
+        assertEquals(1, rows.size());
+        assertArrayEquals(new String[]{"a", "b;c", "d\"e"}, rows.get(0));
+    }
+
+    @Test
+    void lineBreaksInsideQuotesDoNotEndRow() throws IOException {
+        List<String[]> rows = read("\"x\r\ny\";z\r\n\"line\nbreak\";w\r\n");
+
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[]{"x\r\ny", "z"}, rows.get(0));
+        assertArrayEquals(new String[]{"line\nbreak", "w"}, rows.get(1));
+    }
+
+    @Test
+    void crlfAndBareCrEndRows() throws IOException {
+        List<String[]> rows = read("a;b\r\nc;d\re;f\r\n");
+
+        assertEquals(3, rows.size());
+        assertArrayEquals(new String[]{"a", "b"}, rows.get(0));
+        assertArrayEquals(new String[]{"c", "d"}, rows.get(1));
+        assertArrayEquals(new String[]{"e", "f"}, rows.get(2));
+    }
+
+    @Test
+    void bomAndBlankLinesAreSkipped() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("\uFEFFh1;h2\n\n\r\nv1;v2"), ';');
+
+        assertTrue(reader.nextRow());
+        assertArrayEquals(new String[]{"h1", "h2"}, reader.row());
+        assertTrue(reader.nextRow());
+        assertArrayEquals(new String[]{"v1", "v2"}, reader.row());
+        assertEquals(4, reader.getRowNumber());
+        assertFalse(reader.nextRow());
+    }
+
+    @Test
+    void quotedEmptyFieldIsNotBlankLine() throws IOException {
+        List<String[]> rows = read("\"\"\n");
+
+        assertEquals(1, rows.size());
+        assertArrayEquals(new String[]{""}, rows.get(0));
+    }
+
+    @Test
+    void trailingDelimiterAddsEmptyField() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("a;\n"), ';');
+
+        assertTrue(reader.nextRow());
+        assertEquals(2, reader.size());
+        assertEquals("", reader.get(1));
+        assertNull(reader.get(2));
+    }
+
+    @Test
+    void textAfterClosingQuoteIsKept() throws IOException {
+        List<String[]> rows = read("\"ab\"c;d\n");
+
+        assertArrayEquals(new String[]{"abc", "d"}, rows.get(0));
+    }
+
+    @Test
+    void unclosedQuoteAtEndOfFileIsNotError() throws IOException {
+        List<String[]> rows = read("a;\"bc");
+
+        assertEquals(1, rows.size());
+        assertArrayEquals(new String[]{"a", "bc"}, rows.get(0));
+    }
+
+    @Test
+    void utf8IsDetected() throws IOException {
+        byte[] bytes = "Товар;Цена\nСварка;100\n".getBytes(StandardCharsets.UTF_8);
+        CsvReader reader = CsvReader.open(new ByteArrayInputStream(bytes), ';');
+
+        assertTrue(reader.nextRow());
+        assertArrayEquals(new String[]{"Товар", "Цена"}, reader.row());
+        assertTrue(reader.nextRow());
+        assertArrayEquals(new String[]{"Сварка", "100"}, reader.row());
+        assertTrue(reader.getBytesPerChar() > 1);
+    }
+
+    @Test
+    void windows1251IsDetected() throws IOException {
+        byte[] bytes = "Товар;Цена\nСварка;100\n".getBytes(Charset.forName("windows-1251"));
+        CsvReader reader = CsvReader.open(new ByteArrayInputStream(bytes), ';');
+
+        assertTrue(reader.nextRow());
+        assertArrayEquals(new String[]{"Товар", "Цена"}, reader.row());
+        assertTrue(reader.nextRow());
+        assertArrayEquals(new String[]{"Сварка", "100"}, reader.row());
+        assertEquals(1, reader.getBytesPerChar());
+    }
+
+    @Test
+    void utf8CharacterCutAtSampleBoundaryIsStillUtf8() throws IOException {
+        // Двухбайтная "Ж" начинается последним байтом образца в 64 КБ
+        String text = "a".repeat(64 * 1024 - 1) + "Ж\nб";
+        CsvReader reader = CsvReader.open(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), ';');
+
+        assertTrue(reader.nextRow());
+        assertTrue(reader.get(0).endsWith("aЖ"));
+        assertTrue(reader.nextRow());
+        assertEquals("б", reader.get(0));
+    }
+
+    private static List<String[]> read(String csv) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new StringReader(csv), ';')) {
+            while (reader.nextRow()) {
+                rows.add(reader.row());
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,145 @@
+package ru.dugaweld.www.services;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.context.ApplicationEventPublisher;
+import ru.dugaweld.www.dto.ProductBulkFilterDto;
+import ru.dugaweld.www.dto.ProductDto;
+import ru.dugaweld.www.dto.ProductMoveDto;
+import ru.dugaweld.www.dto.ProductPriceChangeDto;
+import ru.dugaweld.www.models.Category;
+import ru.dugaweld.www.repositories.ProductRepository;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Проверка запросов массовых операций до обращения к базе
+ */
+class ProductBulkServiceValidationTest {
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final CategoryTreeCache categoryTreeCache = mock(CategoryTreeCache.class);
+    private final EntityManager entityManager = mock(EntityManager.class);
+
+    private final ProductBulkService service = new ProductBulkService(productRepository,
+        mock(ProductService.class), categoryTreeCache, mock(CategoryStatsService.class),
+        mock(ImageRefService.class), mock(ApplicationEventPublisher.class), entityManager);
+
+    @BeforeEach
+    void setUp() {
+        Category category = new Category();
+        category.setId(1L);
+        category.setName("Электроды");
+        when(categoryTreeCache.current()).thenReturn(CategoryTree.build(1, List.of(category)));
+    }
+
+    @Test
+    void emptyListIsRejected() {
+        assertRejected("Список товаров пуст", () -> service.createAll(List.of()));
+        assertRejected("Список товаров пуст", () -> service.createAll(null));
+    }
+
+    @Test
+    void invalidRowsAreRejectedWithRowNumber() {
+        assertRejected("Строка 2: пустой товар", () -> service.createAll(Arrays.asList(product(null, "10"), null)));
+        assertRejected("Строка 2: не указано название",
+            () -> service.createAll(List.of(product(null, "10"), product(null, " ", "10", 1L))));
+        assertRejected("Строка 1: некорректная цена", () -> service.createAll(List.of(product(null, "-1"))));
+        assertRejected("Строка 1: некорректная цена", () -> service.createAll(List.of(product(null, null))));
+        assertRejected("Строка 1: категория 99 не найдена",
+            () -> service.createAll(List.of(product(null, "Товар", "10", 99L))));
+        verifyNoInteractions(entityManager);
+    }
+
+    @Test
+    void updateRequiresUniqueIds() {
+        assertRejected("Строка 1: не указан id товара", () -> service.updateAll(List.of(product(null, "10"))));
+        assertRejected("Строка 2: товар 5 указан повторно",
+            () -> service.updateAll(List.of(product(5L, "10"), product(5L, "20"))));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void priceChangeNeedsExactlyOneOfPercentAndAmount() {
+        ProductPriceChangeDto both = priceChange(filter());
+        both.setPercent(BigDecimal.TEN);
+        both.setAmount(BigDecimal.ONE);
+        ProductPriceChangeDto neither = priceChange(filter());
+        neither.setPercent(null);
+
+        assertRejected("Укажите либо процент, либо сумму изменения цены", () -> service.adjustPrices(both));
+        assertRejected("Укажите либо процент, либо сумму изменения цены", () -> service.adjustPrices(neither));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void priceCannotDropBelowZeroPercent() {
+        ProductPriceChangeDto request = priceChange(filter());
+        request.setPercent(BigDecimal.valueOf(-150));
+
+        assertRejected("Цену нельзя уменьшить больше чем на 100%", () -> service.adjustPrices(request));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void bulkFilterIsRequiredAndNotEmpty() {
+        ProductBulkFilterDto emptyCategories = filter();
+        emptyCategories.setCategoryIds(List.of());
+        ProductBulkFilterDto emptyIds = new ProductBulkFilterDto();
+        emptyIds.setIds(List.of());
+
+        assertRejected("Не задан отбор товаров", () -> service.adjustPrices(priceChange(null)));
+        assertRejected("Пустой список категорий", () -> service.adjustPrices(priceChange(emptyCategories)));
+        assertRejected("Пустой список id", () -> service.adjustPrices(priceChange(emptyIds)));
+        assertRejected("Пустой список категорий", () -> service.moveToCategory(move(emptyCategories, 1L)));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void moveTargetMustExist() {
+        assertRejected("Категория 99 не найдена", () -> service.moveToCategory(move(filter(), 99L)));
+        verifyNoInteractions(productRepository);
+    }
+
+    private static void assertRejected(String message, Executable call) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, call);
+        assertEquals(message, e.getMessage());
+    }
+
+    private static ProductDto product(Long id, String price) {
+        return product(id, "Товар", price, 1L);
+    }
+
+    private static ProductDto product(Long id, String name, String price, Long categoryId) {
+        return new ProductDto(id, name, null, price != null ? new BigDecimal(price) : null, null, categoryId, null);
+    }
+
+    private static ProductBulkFilterDto filter() {
+        ProductBulkFilterDto filter = new ProductBulkFilterDto();
+        filter.setCategoryIds(List.of(1L));
+        return filter;
+    }
+
+    private static ProductPriceChangeDto priceChange(ProductBulkFilterDto filter) {
+        ProductPriceChangeDto request = new ProductPriceChangeDto();
+        request.setFilter(filter);
+        request.setPercent(BigDecimal.TEN);
+        return request;
+    }
+
+    private static ProductMoveDto move(ProductBulkFilterDto filter, Long targetCategoryId) {
+        ProductMoveDto request = new ProductMoveDto();
+        request.setFilter(filter);
+        request.setTargetCategoryId(targetCategoryId);
+        return request;
+    }
+}
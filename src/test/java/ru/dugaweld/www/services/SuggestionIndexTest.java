@@ -0,0 +1,95 @@
+package ru.dugaweld.www.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.dugaweld.www.dto.ProductDto;
+import ru.dugaweld.www.dto.ProductNameView;
+import ru.dugaweld.www.dto.SuggestionDto;
+import ru.dugaweld.www.events.CatalogChangedEvent;
+import ru.dugaweld.www.models.Category;
+import ru.dugaweld.www.repositories.ProductRepository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Подсказки по началу любого слова названия и обновление индекса по одному товару
+ */
+class SuggestionIndexTest {
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final CategoryTreeCache categoryTreeCache = mock(CategoryTreeCache.class);
+    private final SuggestionIndex index = new SuggestionIndex(productRepository, categoryTreeCache);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(index, "defaultLimit", 10);
+        ReflectionTestUtils.setField(index, "maxLimit", 20);
+        Category category = new Category();
+        category.setId(1L);
+        category.setName("Электроды");
+        when(categoryTreeCache.current()).thenReturn(CategoryTree.build(1, List.of(category)));
+        when(productRepository.findAllNames()).thenReturn(List.of(
+            name(10L, "Электроды МР-3 3 мм"),
+            name(11L, "Проволока сварочная"),
+            name(12L, "Сварочный аппарат Ресанта")
+        ));
+        index.load();
+    }
+
+    @Test
+    void matchesStartOfAnyWord() {
+        assertEquals(List.of("Электроды МР-3 3 мм"), texts(index.suggest("мр-3", 10)));
+        assertEquals(List.of("Сварочный аппарат Ресанта", "Проволока сварочная"), texts(index.suggest("СВАР", 10)));
+    }
+
+    @Test
+    void categoriesGoFirst() {
+        assertEquals(List.of("Электроды", "Электроды МР-3 3 мм"), texts(index.suggest("элек", 10)));
+        assertEquals("CATEGORY", index.suggest("элек", 10).get(0).getType());
+    }
+
+    @Test
+    void severalWordsMustFollowEachOther() {
+        assertEquals(List.of("Электроды МР-3 3 мм"), texts(index.suggest("электроды мр", 10)));
+        assertEquals(List.of("Электроды МР-3 3 мм"), texts(index.suggest("мр-3 3 м", 10)));
+        assertEquals(List.of(), texts(index.suggest("электроды 3 мм мр", 10)));
+    }
+
+    @Test
+    void renamedProductLosesOldWords() {
+        when(productRepository.findDtoById(10L)).thenReturn(Optional.of(
+            new ProductDto(10L, "Электроды ОК-46", null, BigDecimal.ONE, null, 1L, 1L)));
+        index.onCatalogChanged(new CatalogChangedEvent(CatalogChangedEvent.EntityType.PRODUCT, 10L));
+
+        assertEquals(List.of(), texts(index.suggest("мр-3", 10)));
+        assertEquals(List.of("Электроды ОК-46"), texts(index.suggest("ок", 10)));
+    }
+
+    @Test
+    void deletedProductIsRemoved() {
+        when(productRepository.findDtoById(11L)).thenReturn(Optional.empty());
+        index.onCatalogChanged(new CatalogChangedEvent(CatalogChangedEvent.EntityType.PRODUCT, 11L));
+
+        assertEquals(List.of("Сварочный аппарат Ресанта"), texts(index.suggest("свар", 10)));
+    }
+
+    private static List<String> texts(List<SuggestionDto> suggestions) {
+        return suggestions.stream().map(SuggestionDto::getText).toList();
+    }
+
+    private static ProductNameView name(Long id, String name) {
+        return new ProductNameView() {
+            @Override
+            public Long getId() { return id; }
+
+            @Override
+            public String getName() { return name; }
+        };
+    }
+}